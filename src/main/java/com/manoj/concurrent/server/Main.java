@@ -1,6 +1,7 @@
 package com.manoj.concurrent.server;
 
 
+import com.manoj.concurrent.server.config.ServerConfig;
 import com.manoj.concurrent.server.server.TCPSocketServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,9 +14,10 @@ public class Main {
     public static void main(String[] args) {
 
         log.info("Starting TCP server....");
-        TCPSocketServer server = new TCPSocketServer();
-
         try {
+            // defaults from server.properties; -Dserver.config=<file> and -D<key>=<value> override them
+            ServerConfig config = ServerConfig.load(System.getProperty("server.config"));
+            TCPSocketServer server = new TCPSocketServer(config);
             server.startServer();
         } catch (IOException e){
             log.error("Starting NIO server failed.",e);
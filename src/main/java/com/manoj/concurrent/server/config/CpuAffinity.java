@@ -0,0 +1,78 @@
+package com.manoj.concurrent.server.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Pins the calling thread to a cpu list. The JVM has no API for thread affinity, so on Linux the OS thread id is
+ * read from /proc/thread-self and the thread is pinned with taskset. Where that is not possible the thread is left
+ * unpinned and a warning is logged with its name, OS thread id if known and cpu list, so it can be pinned by hand.
+ */
+public final class CpuAffinity {
+    private static final Logger log = LoggerFactory.getLogger(CpuAffinity.class);
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+    private static final String TASKSET = "taskset";
+
+    private CpuAffinity() {
+    }
+
+    /**
+     * Pin the calling thread to the given cpus.
+     * @param cpuList e.g. 2 or 0-3 or 1,3
+     * @return true if the thread was pinned
+     */
+    public static boolean pinCurrentThread(String cpuList) {
+        String threadName = Thread.currentThread().getName();
+        String tid = currentThreadId();
+        if (tid == null) {
+            log.warn("Cannot pin thread {} to cpus {}: OS thread id not available", threadName, cpuList);
+            return false;
+        }
+        try {
+            Process taskset = new ProcessBuilder(TASKSET, "-pc", cpuList, tid).redirectErrorStream(true).start();
+            String output = readFully(taskset.getInputStream());
+            if (taskset.waitFor() != 0) {
+                log.warn("Cannot pin thread {} (tid {}) to cpus {}: {}", threadName, tid, cpuList, output.trim());
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Cannot pin thread {} (tid {}) to cpus {}: {} not available", threadName, tid, cpuList, TASKSET);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        log.info("Pinned thread {} (tid {}) to cpus {}", threadName, tid, cpuList);
+        return true;
+    }
+
+    /**
+     * @return the OS thread id of the calling thread, or null if not on Linux
+     */
+    private static String currentThreadId() {
+        try {
+            // resolves to <pid>/task/<tid>
+            return Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
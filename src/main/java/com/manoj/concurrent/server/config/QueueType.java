@@ -0,0 +1,13 @@
+package com.manoj.concurrent.server.config;
+
+/**
+ * The queue in front of a stage.
+ * LINKED      - {@link java.util.concurrent.LinkedBlockingQueue}; unbounded when the capacity is 0.
+ * ARRAY       - {@link java.util.concurrent.ArrayBlockingQueue}; needs a capacity.
+ * SYNCHRONOUS - {@link java.util.concurrent.SynchronousQueue}; a direct hand-off without buffering.
+ */
+public enum QueueType {
+    LINKED,
+    ARRAY,
+    SYNCHRONOUS
+}
@@ -0,0 +1,290 @@
+package com.manoj.concurrent.server.config;
+
+import com.manoj.concurrent.server.log.DurabilityPolicy;
+import com.manoj.concurrent.server.sink.SlowConsumerPolicy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The configuration a server is assembled from. Defaults come from server.properties on the classpath, overridden
+ * by an optional properties file and then by system properties with the same keys, e.g. -Dlog.durability=PERIODIC.
+ * Every stage of the ingest pipeline is declared with stage.&lt;name&gt;.threads, .queue, .queueCapacity and an
+ * optional .affinity group; see {@link Stage} and {@link StageConfig}.
+ */
+public class ServerConfig {
+    private static final String DEFAULTS_RESOURCE = "/server.properties";
+    private static final String AFFINITY_PATTERN = "[0-9]+([-,][0-9]+)*";
+    private final int port;
+    private final int maxConnections;
+    private final File logFile;
+    private final DurabilityPolicy durabilityPolicy;
+    private final long fsyncIntervalMs;
+    private final int fsyncBatchSize;
+    private final boolean acknowledgeWrites;
+    private final long reportIntervalSeconds;
+    private final int feedPort;
+    private final InetAddress feedBindAddress;
+    private final int feedBufferCapacity;
+    private final int feedBatchSize;
+    private final SlowConsumerPolicy feedSlowConsumerPolicy;
+    private final Map<Stage, StageConfig> stages = new EnumMap<>(Stage.class);
+
+    private ServerConfig(Properties properties) {
+        this.port = intValue(properties, "server.port");
+        this.maxConnections = intValue(properties, "server.maxConnections");
+        this.logFile = new File(value(properties, "log.file"));
+        this.durabilityPolicy = DurabilityPolicy.valueOf(value(properties, "log.durability"));
+        this.fsyncIntervalMs = intValue(properties, "log.fsyncIntervalMs");
+        this.fsyncBatchSize = intValue(properties, "log.fsyncBatchSize");
+        this.acknowledgeWrites = Boolean.parseBoolean(value(properties, "ack.enabled"));
+        this.reportIntervalSeconds = intValue(properties, "report.intervalSeconds");
+        this.feedPort = intValue(properties, "feed.port");
+        this.feedBindAddress = addressValue(properties, "feed.bindAddress");
+        this.feedBufferCapacity = intValue(properties, "feed.bufferCapacity");
+        this.feedBatchSize = intValue(properties, "feed.batchSize");
+        this.feedSlowConsumerPolicy = SlowConsumerPolicy.valueOf(value(properties, "feed.slowConsumerPolicy"));
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, stageConfig(properties, stage));
+        }
+        validate();
+    }
+
+    /**
+     * Load the defaults, overridden by the given file if any and then by system properties.
+     * @param configFile properties file; may be null
+     * @return
+     * @throws IOException
+     */
+    public static ServerConfig load(String configFile) throws IOException {
+        Properties properties = defaultProperties();
+        if (configFile != null) {
+            try (InputStream in = new FileInputStream(configFile)) {
+                properties.load(in);
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String override = System.getProperty(key);
+            if (override != null) {
+                properties.setProperty(key, override);
+            }
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * @return a copy of the defaults from server.properties
+     */
+    public static Properties defaultProperties() {
+        Properties properties = new Properties();
+        try (InputStream in = ServerConfig.class.getResourceAsStream(DEFAULTS_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing " + DEFAULTS_RESOURCE + " on the classpath");
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading " + DEFAULTS_RESOURCE, e);
+        }
+        return properties;
+    }
+
+    /**
+     * @param properties a complete set of keys, e.g. {@link #defaultProperties()} with some values changed
+     * @return
+     * @throws IllegalArgumentException if a value is missing, malformed or the topology is not supported
+     */
+    public static ServerConfig fromProperties(Properties properties) {
+        return new ServerConfig(properties);
+    }
+
+    private static StageConfig stageConfig(Properties properties, Stage stage) {
+        String prefix = "stage." + stage.key() + ".";
+        String queue = properties.getProperty(prefix + "queue", "").trim();
+        String affinity = properties.getProperty(prefix + "affinity", "").trim();
+        if (!affinity.isEmpty() && !affinity.matches(AFFINITY_PATTERN)) {
+            throw new IllegalArgumentException(prefix + "affinity must be a cpu list like 2 or 0-3 or 1,3: " + affinity);
+        }
+        return new StageConfig(stage, intValue(properties, prefix + "threads"),
+                queue.isEmpty() ? null : QueueType.valueOf(queue),
+                queue.isEmpty() ? 0 : intValue(properties, prefix + "queueCapacity"),
+                affinity.isEmpty() ? null : affinity);
+    }
+
+    private void validate() {
+        requirePositive("log.fsyncBatchSize", fsyncBatchSize);
+        requirePositive("feed.bufferCapacity", feedBufferCapacity);
+        requirePositive("feed.batchSize", feedBatchSize);
+        requireThreads(Stage.ACCEPT, 1, 1);// one listening socket
+        requireThreads(Stage.READ, 1, Integer.MAX_VALUE);
+        requireThreads(Stage.DEDUPE, 0, Integer.MAX_VALUE);
+        requireThreads(Stage.WRITE, 1, 1);// single writer so the file is not corrupted
+        requireThreads(Stage.ACK, 1, Integer.MAX_VALUE);
+        requireThreads(Stage.REPORT, 1, Integer.MAX_VALUE);
+        for (Stage stage : new Stage[]{Stage.READ, Stage.DEDUPE, Stage.WRITE, Stage.ACK}) {
+            StageConfig stageConfig = stages.get(stage);
+            if (stage == Stage.DEDUPE && stageConfig.getThreads() == 0) {
+                continue;// inline dedupe has no queue
+            }
+            if (stageConfig.getQueueType() == null) {
+                throw new IllegalArgumentException("stage." + stage.key() + ".queue is required");
+            }
+            if (stageConfig.getQueueType() == QueueType.ARRAY && stageConfig.getQueueCapacity() <= 0) {
+                throw new IllegalArgumentException("stage." + stage.key() + ".queueCapacity must be positive for "
+                        + QueueType.ARRAY);
+            }
+        }
+        if (stages.get(Stage.READ).getQueueType() == QueueType.SYNCHRONOUS
+                && maxConnections > stages.get(Stage.READ).getThreads()) {
+            // a SYNCHRONOUS queue holds no connections, so every open connection needs its own reader
+            throw new IllegalArgumentException("server.maxConnections must not exceed stage.read.threads with a "
+                    + QueueType.SYNCHRONOUS + " read queue");
+        }
+        StageConfig ack = stages.get(Stage.ACK);
+        // the log writer must never block queuing an ack, and each connection is queued at most once
+        if (ack.getQueueType() == QueueType.SYNCHRONOUS
+                || (ack.getQueueCapacity() > 0 && ack.getQueueCapacity() < maxConnections)) {
+            throw new IllegalArgumentException("stage.ack.queue must be LINKED or hold at least server.maxConnections "
+                    + "entries");
+        }
+        if (acknowledgeWrites && durabilityPolicy == DurabilityPolicy.NONE) {
+            throw new IllegalArgumentException("Acked mode requires a durability policy other than " + DurabilityPolicy.NONE);
+        }
+        if (acknowledgeWrites && stages.get(Stage.DEDUPE).getThreads() > 1) {
+            // cumulative acks need the numbers of a connection to reach the writer in order
+            throw new IllegalArgumentException("Acked mode requires at most 1 dedupe thread");
+        }
+    }
+
+    private static void requirePositive(String key, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive but was " + value);
+        }
+    }
+
+    private void requireThreads(Stage stage, int min, int max) {
+        int threads = stages.get(stage).getThreads();
+        if (threads < min || threads > max) {
+            throw new IllegalArgumentException("stage." + stage.key() + ".threads must be "
+                    + (min == max ? String.valueOf(min) : "at least " + min) + " but was " + threads);
+        }
+    }
+
+    private static String value(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing configuration " + key);
+        }
+        return value.trim();
+    }
+
+    private static int intValue(Properties properties, String key) {
+        try {
+            return Integer.parseInt(value(properties, key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Configuration " + key + " must be a number", e);
+        }
+    }
+
+    private static InetAddress addressValue(Properties properties, String key) {
+        try {
+            return InetAddress.getByName(value(properties, key));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Configuration " + key + " must be a host name or address", e);
+        }
+    }
+
+    /**
+     * @return a human readable dump of the effective topology, one line per stage
+     */
+    public String describeTopology() {
+        StringBuilder builder = new StringBuilder("Effective topology:");
+        for (StageConfig stageConfig : stages.values()) {
+            // no ack threads run unless acks are enabled; inline dedupe runs on the read threads and has no queue
+            int threads = stageConfig.getStage() == Stage.ACK && !acknowledgeWrites ? 0 : stageConfig.getThreads();
+            boolean queued = threads > 0 && stageConfig.getQueueType() != null;
+            builder.append(String.format("%n  %-7s threads=%-3d queue=%-20s affinity=%s", stageConfig.getStage().key(),
+                    threads,
+                    queued ? stageConfig.getQueueType() + "(" + stageConfig.getQueueCapacity() + ")" : "-",
+                    stageConfig.getAffinityGroup() == null ? "-" : stageConfig.getAffinityGroup()));
+        }
+        builder.append(String.format("%n  port=%d maxConnections=%d logFile=%s durability=%s fsyncIntervalMs=%d "
+                        + "fsyncBatchSize=%d ack=%s reportIntervalSeconds=%d", port, maxConnections, logFile,
+                durabilityPolicy, fsyncIntervalMs, fsyncBatchSize, acknowledgeWrites, reportIntervalSeconds));
+        builder.append(isFeedEnabled()
+                ? String.format("%n  feed bindAddress=%s port=%d bufferCapacity=%d batchSize=%d slowConsumerPolicy=%s",
+                        feedBindAddress.getHostAddress(), feedPort, feedBufferCapacity, feedBatchSize,
+                        feedSlowConsumerPolicy)
+                : String.format("%n  feed disabled"));
+        return builder.toString();
+    }
+
+    public StageConfig getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public DurabilityPolicy getDurabilityPolicy() {
+        return durabilityPolicy;
+    }
+
+    public long getFsyncIntervalMs() {
+        return fsyncIntervalMs;
+    }
+
+    public int getFsyncBatchSize() {
+        return fsyncBatchSize;
+    }
+
+    public boolean isAcknowledgeWrites() {
+        return acknowledgeWrites;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    /**
+     * @return true if new unique numbers are streamed to subscribers on {@link #getFeedPort()}
+     */
+    public boolean isFeedEnabled() {
+        return feedPort >= 0;
+    }
+
+    public int getFeedPort() {
+        return feedPort;
+    }
+
+    public InetAddress getFeedBindAddress() {
+        return feedBindAddress;
+    }
+
+    public int getFeedBufferCapacity() {
+        return feedBufferCapacity;
+    }
+
+    public int getFeedBatchSize() {
+        return feedBatchSize;
+    }
+
+    public SlowConsumerPolicy getFeedSlowConsumerPolicy() {
+        return feedSlowConsumerPolicy;
+    }
+}
@@ -0,0 +1,26 @@
+package com.manoj.concurrent.server.config;
+
+/**
+ * The stages of the ingest pipeline, in the order a number flows through them.
+ * ACCEPT - accepts client connections and hands them to the read stage.
+ * READ   - reads and parses lines of one connection for its lifetime.
+ * DEDUPE - drops numbers seen before and publishes the rest to the sinks; 0 threads runs it inline on the read threads.
+ * WRITE  - the log writer appending numbers to the log file.
+ * ACK    - sends acks of durable numbers to clients in acked mode; no threads run when acks are disabled.
+ * REPORT - prints the periodic statistics.
+ */
+public enum Stage {
+    ACCEPT,
+    READ,
+    DEDUPE,
+    WRITE,
+    ACK,
+    REPORT;
+
+    /**
+     * @return the name used for the stage in configuration keys and thread names
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,92 @@
+package com.manoj.concurrent.server.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread count, queue and CPU affinity group of one {@link Stage}.
+ * Threads of a stage with an affinity group pin themselves to its cpus when they start, see {@link CpuAffinity};
+ * the group is also carried in the thread names (e.g. "write@cpu2-1").
+ */
+public class StageConfig {
+    private final Stage stage;
+    private final int threads;
+    private final QueueType queueType;
+    private final int queueCapacity;
+    private final String affinityGroup;// null when the stage is not pinned
+
+    public StageConfig(Stage stage, int threads, QueueType queueType, int queueCapacity, String affinityGroup) {
+        this.stage = stage;
+        this.threads = threads;
+        this.queueType = queueType;
+        this.queueCapacity = queueCapacity;
+        this.affinityGroup = affinityGroup;
+    }
+
+    /**
+     * @return a new empty queue of the configured type and capacity
+     */
+    public <T> BlockingQueue<T> newQueue() {
+        switch (queueType) {
+            case ARRAY:
+                return new ArrayBlockingQueue<>(queueCapacity);
+            case SYNCHRONOUS:
+                return new SynchronousQueue<>();
+            default:
+                return queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new LinkedBlockingQueue<>();
+        }
+    }
+
+    /**
+     * @return a thread factory naming threads after the stage and its affinity group, and pinning them to it
+     */
+    public ThreadFactory newThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return runnable -> new Thread(() -> {
+            pinCurrentThread();
+            runnable.run();
+        }, threadName(threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Pin the calling thread to the affinity group, if the stage has one. For stage threads not created by
+     * {@link #newThreadFactory()}.
+     */
+    public void pinCurrentThread() {
+        if (affinityGroup != null) {
+            CpuAffinity.pinCurrentThread(affinityGroup);
+        }
+    }
+
+    /**
+     * @param index 1 based index of the thread within the stage
+     * @return the name of that thread
+     */
+    public String threadName(int index) {
+        return stage.key() + (affinityGroup != null ? "@cpu" + affinityGroup : "") + "-" + index;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public String getAffinityGroup() {
+        return affinityGroup;
+    }
+}
@@ -1,12 +1,10 @@
 package com.manoj.concurrent.server.constants;
 
 /**
- *  A set of constants used in the application
+ *  A set of constants used in the application. Tunables live in
+ *  {@link com.manoj.concurrent.server.config.ServerConfig}.
  */
 public class Constants {
     private static final String SERVER_NEW_LINE = "\n";
     public static final String TERMINATE_CMD = "terminate";
-    public static final int MAX_CLIENT_CONNECTIONS = 5;
-    public static final String LOG_FILE_NAME = "numbers.log";
-    public static final int MAX_QUEUE_SIZE = 5000;
 }
@@ -0,0 +1,119 @@
+package com.manoj.concurrent.server.handler;
+
+import com.manoj.concurrent.server.config.StageConfig;
+import com.manoj.concurrent.server.log.LogEntry;
+import com.manoj.concurrent.server.sink.NumberSink;
+import com.manoj.concurrent.server.stats.PeriodicReportingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dedupe stage. De duplicates the numbers parsed by the {@link IncomingMessageHandler}s; if seen before in the
+ * entire application lifecycle then it is a dupe. Numbers seen for the first time are published to every sink.
+ * In acked mode a dupe is still published as an ack marker so the cumulative ack for its connection can move past it,
+ * and never ahead of the first copy of the number.
+ * With 0 threads the numbers are processed inline on the calling read thread, otherwise they are queued to the
+ * stage's own threads.
+ */
+public class DedupeStage {
+    private static final Logger log = LoggerFactory.getLogger(DedupeStage.class);
+    private static final long POLL_TIMEOUT_MS = 50;
+    private final PeriodicReportingService periodicReportingService;
+    private final List<NumberSink> sinks;// every sink gets each number which passed dedupe
+    private final BlockingQueue<LogEntry> dedupeQueue;// null when dedupe runs inline
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+    private final Object ackOrderLock = new Object();
+
+    public DedupeStage(StageConfig stageConfig, PeriodicReportingService periodicReportingService,
+                       List<NumberSink> sinks) {
+        this.periodicReportingService = periodicReportingService;
+        this.sinks = sinks;
+        this.dedupeQueue = stageConfig.getThreads() > 0 ? stageConfig.newQueue() : null;
+        ThreadFactory threadFactory = stageConfig.newThreadFactory();
+        for (int i = 0; i < stageConfig.getThreads(); i++) {
+            workers.add(threadFactory.newThread(this::drainQueue));
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Dedupe a parsed number inline or hand it to the stage's threads.
+     * @param entry
+     * @throws InterruptedException
+     * @throws IllegalStateException if the stage is shut down
+     */
+    public void submit(LogEntry entry) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Dedupe stage is shut down; dropping " + entry.getNumber());
+        }
+        if (dedupeQueue == null) {
+            process(entry);
+        } else {
+            dedupeQueue.put(entry);
+        }
+    }
+
+    private void drainQueue() {
+        try {
+            // keep draining after shutdown is requested until everything queued so far is published
+            while (running || !dedupeQueue.isEmpty()) {
+                LogEntry entry = dedupeQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    process(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Dedupe thread interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(LogEntry entry) throws InterruptedException {
+        if (entry.getAcknowledger() == null) {
+            dedupeAndPublish(entry);
+            return;
+        }
+        // In acked mode the dedupe check and the publish are one step, so the first copy of a number is always queued
+        // to the writer before the ack marker of any duplicate of it. The marker is then forced with or after the
+        // number and a duplicate can never be acked before its first copy is durable.
+        synchronized (ackOrderLock) {
+            dedupeAndPublish(entry);
+        }
+    }
+
+    private void dedupeAndPublish(LogEntry entry) throws InterruptedException {
+        boolean isDuplicate = this.periodicReportingService.updateIntegersAndCheckDupe(entry.getNumber());
+        if (!isDuplicate) {// only publish if not a duplicate
+            publish(entry);
+        } else if (entry.getAcknowledger() != null) {
+            publish(LogEntry.ackMarker(entry.getAcknowledger(), entry.getSequence()));
+        }
+    }
+
+    private void publish(LogEntry entry) throws InterruptedException {
+        for (NumberSink sink : sinks) {
+            sink.publish(entry);
+        }
+    }
+
+    /**
+     * Stop the stage's threads once everything queued has been published.
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
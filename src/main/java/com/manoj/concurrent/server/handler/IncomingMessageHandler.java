@@ -1,8 +1,8 @@
 package com.manoj.concurrent.server.handler;
 
 import com.manoj.concurrent.server.constants.Constants;
-import com.manoj.concurrent.server.log.LogWriter;
-import com.manoj.concurrent.server.stats.PeriodicReportingService;
+import com.manoj.concurrent.server.log.DurableAcknowledger;
+import com.manoj.concurrent.server.log.LogEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.BufferedReader;
@@ -10,41 +10,41 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
- * A message handler thread which will handle receiving and processing bytes for each of the client sockets.
- * Each handler corresponds to one thread.
+ * A message handler which will handle receiving and parsing bytes for each of the client sockets.
+ * Each handler runs on one thread of the read stage for the lifetime of its connection and hands valid numbers
+ * to the {@link DedupeStage}.
  */
-public class IncomingMessageHandler extends Thread {
+public class IncomingMessageHandler implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(IncomingMessageHandler.class);
+    private static final long ACK_DRAIN_TIMEOUT_MS = 5000;// max wait for the last ack after the client stops sending
     private final Socket socket;
-    private ExecutorService executorService = Executors.newFixedThreadPool(4);
-    private final LogWriter logWriter;
-    private BlockingQueue<String> fileWriterQueue;
     private Pattern validPattern= Pattern.compile("\\d{9}");/// valid pattern for 9 digit number
-    private PeriodicReportingService periodicReportingService;
-    private final AtomicBoolean orderShutdown;
-
+    private final DedupeStage dedupeStage;
+    private final CountDownLatch orderShutdown;
+    private final DurableAcknowledger acknowledger;// null unless the server runs in acked mode
+    private final Runnable onClose;
+    private long sequence = 0;// sequence of the last valid number received on this connection
 
     /**
      * A constructor for incoming message handling
      * @param socket
-     * @param logWriter
-     * @param fileWriterQueue
-     * @param periodicReportingService
-     * @param orderShutdown
+     * @param dedupeStage
+     * @param orderShutdown counted down on a terminate command
+     * @param acknowledger acks numbers of this connection once durable; null to not ack
+     * @param onClose run once the handler is done with the connection, e.g. to free its connection slot
      */
-    public IncomingMessageHandler(Socket socket, LogWriter logWriter, BlockingQueue fileWriterQueue, PeriodicReportingService periodicReportingService, AtomicBoolean orderShutdown) {
+    public IncomingMessageHandler(Socket socket, DedupeStage dedupeStage, CountDownLatch orderShutdown,
+                                  DurableAcknowledger acknowledger, Runnable onClose) {
         this.socket = socket;
-        this.logWriter = logWriter;
-        this.fileWriterQueue = fileWriterQueue;
-        this.periodicReportingService = periodicReportingService;
+        this.dedupeStage = dedupeStage;
         this.orderShutdown = orderShutdown;
+        this.acknowledger = acknowledger;
+        this.onClose = onClose;
     }
 
     @Override
@@ -56,11 +56,12 @@ public class IncomingMessageHandler extends Thread {
             // Get input and output streams
             in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             String request;
-            while(true){// keep reading continuously
-                if((request = in.readLine()) != null) {
-                    processMessageAndWriteToLog(request);
-                }
+            // keep reading continuously until the client closes or the read stage is shut down
+            while(!Thread.currentThread().isInterrupted() && (request = in.readLine()) != null){
+                processMessage(request);
             }
+            log.debug("Client closed connection Remote Add {}", socket.getRemoteSocketAddress());
+            awaitLastAck();
         } catch (IOException e) {
             log.error("Error processing message", e);
             if (e instanceof SocketException) {
@@ -75,6 +76,9 @@ public class IncomingMessageHandler extends Thread {
                 }
             }
         } finally {
+            if (acknowledger != null) {
+                acknowledger.close();
+            }
             try {
                 if (in != null) {
                     in.close();
@@ -82,32 +86,50 @@ public class IncomingMessageHandler extends Thread {
             } catch (Exception e) {
                 log.error("Error closing input stream.", e);
             }
+            onClose.run();
+        }
+    }
+
+    /**
+     * A client may half-close its connection after the last number and keep reading acks, so in acked mode the
+     * connection stays open until the ack of the last number was sent.
+     */
+    private void awaitLastAck() {
+        if (acknowledger == null || sequence == 0) {
+            return;
+        }
+        try {
+            if (!acknowledger.awaitAcked(sequence, ACK_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Closing connection Remote Add {} before ack {} was sent", socket.getRemoteSocketAddress(),
+                        sequence);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Process the request and add to the log writer queue for async writing to file.
-     * De duplicate the numbers written to logs. If seen before in the entire application lifecycle then
-     * it is a dupe.
+     * Process the request and hand valid numbers with their sequence on this connection to the dedupe stage.
      * @param msgString
      */
-    private void processMessageAndWriteToLog(String msgString) {
+    private void processMessage(String msgString) {
         log.debug("Processing message " + msgString);
         if (msgString.contains(Constants.TERMINATE_CMD)) {
             log.info("Got a shutdown message :" + msgString);
-            this.orderShutdown.set(true);
+            this.orderShutdown.countDown();
         } else {
             try {
                 if (validPattern.matcher(msgString).matches()) {
-                    boolean isDuplicate = this.periodicReportingService.updateIntegersAndCheckDupe(msgString);
-                    if (!isDuplicate) {// only add to queue if duplicate
-                        this.fileWriterQueue.put(msgString);// add to file queue shared with
-                    }
+                    sequence++;
+                    dedupeStage.submit(new LogEntry(msgString, acknowledger, sequence));
                 } else {
                     log.debug("Message {} not matching expected pattern is being dropped", msgString);
                 }
+            } catch (InterruptedException e) {
+                log.error("Interrupted handing message to dedupe stage", e);
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                log.error("Error adding message to log writer queue", e);
+                log.error("Error handing message to dedupe stage", e);
             }
         }
     }
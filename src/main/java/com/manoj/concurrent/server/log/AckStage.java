@@ -0,0 +1,74 @@
+package com.manoj.concurrent.server.log;
+
+import com.manoj.concurrent.server.config.StageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ack stage. Sends the acks of acked connections on the stage's own threads, so neither the {@link LogWriter}
+ * nor the read stage ever write to a client. A {@link DurableAcknowledger} with a new durable sequence is queued
+ * here at most once at a time, so the queue never holds more than one entry per connection.
+ * A client which stops reading acks blocks the ack thread sending to it; more threads isolate such clients better.
+ */
+public class AckStage {
+    private static final Logger log = LoggerFactory.getLogger(AckStage.class);
+    private static final long POLL_TIMEOUT_MS = 50;
+    private final BlockingQueue<DurableAcknowledger> ackQueue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public AckStage(StageConfig stageConfig) {
+        this.ackQueue = stageConfig.newQueue();
+        ThreadFactory threadFactory = stageConfig.newThreadFactory();
+        for (int i = 0; i < stageConfig.getThreads(); i++) {
+            workers.add(threadFactory.newThread(this::drainQueue));
+        }
+    }
+
+    public void start() {
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Queue a connection whose durable sequence moved past what was sent to it.
+     * @param acknowledger
+     */
+    void schedule(DurableAcknowledger acknowledger) {
+        if (!ackQueue.offer(acknowledger)) {
+            // the queue holds one entry per connection, so this only happens with a misconfigured capacity
+            log.error("Ack queue full; Closing acked connection");
+            acknowledger.fail();
+        }
+    }
+
+    private void drainQueue() {
+        try {
+            while (running || !ackQueue.isEmpty()) {
+                DurableAcknowledger acknowledger = ackQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (acknowledger != null) {
+                    acknowledger.sendPending();
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Ack thread interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the stage's threads once every queued ack is sent.
+     * @throws InterruptedException
+     */
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
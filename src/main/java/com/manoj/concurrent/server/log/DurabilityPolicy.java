@@ -0,0 +1,14 @@
+package com.manoj.concurrent.server.log;
+
+/**
+ * Controls when the {@link LogWriter} forces written numbers to disk.
+ * NONE     - numbers are written to the file but never forced; the OS decides when they hit disk.
+ * PERIODIC - forced once every fsync interval or once the fsync batch size of unsynced entries is reached,
+ *            whichever comes first. One fsync covers everything written by all connections since the last one.
+ * PER_BATCH - forced after every batch drained from the writer queue.
+ */
+public enum DurabilityPolicy {
+    NONE,
+    PERIODIC,
+    PER_BATCH
+}
@@ -0,0 +1,134 @@
+package com.manoj.concurrent.server.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends cumulative acks back to one client connection in acked mode. Every valid number received on a connection
+ * gets the next sequence starting at 1; an ack line "ack &lt;sequence&gt;" tells the client that all numbers up to and
+ * including that sequence have been forced to disk.
+ * The {@link LogWriter} thread only records the latest durable sequence and queues the connection to the
+ * {@link AckStage}, whose threads write the ack to the socket, so a client which stops reading never blocks the writer.
+ */
+public class DurableAcknowledger {
+    private static final Logger log = LoggerFactory.getLogger(DurableAcknowledger.class);
+    private static final String ACK_PREFIX = "ack ";
+    private final Socket socket;
+    private final OutputStream out;
+    private final AckStage ackStage;
+    private long durableSequence = 0;// highest sequence forced to disk; guarded by this
+    private long sentSequence = 0;// highest sequence acked to the client; guarded by this
+    private boolean scheduled = false;// queued to or being sent by the ack stage; guarded by this
+    private boolean closed = false;// guarded by this
+
+    public DurableAcknowledger(Socket socket, AckStage ackStage) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+        this.ackStage = ackStage;
+    }
+
+    /**
+     * Record that all numbers up to the given sequence are durable and queue the ack; acks never go backwards.
+     * Never blocks on the client.
+     * @param sequence
+     */
+    public void acknowledge(long sequence) {
+        synchronized (this) {
+            if (closed || sequence <= durableSequence) {
+                return;
+            }
+            durableSequence = sequence;
+            if (scheduled) {
+                return;// the ack stage picks up the new sequence when it sends
+            }
+            scheduled = true;
+        }
+        ackStage.schedule(this);
+    }
+
+    /**
+     * Send the latest durable sequence to the client. Called by the ack stage only.
+     */
+    void sendPending() {
+        long sequence;
+        synchronized (this) {
+            if (closed) {
+                scheduled = false;
+                return;
+            }
+            sequence = durableSequence;
+        }
+        try {
+            out.write((ACK_PREFIX + sequence + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Error sending ack to Remote Add {}", socket.getRemoteSocketAddress(), e);
+            close();
+            return;
+        }
+        synchronized (this) {
+            sentSequence = sequence;
+            notifyAll();
+            if (closed || durableSequence == sentSequence) {
+                scheduled = false;
+                return;
+            }
+        }
+        ackStage.schedule(this);// more became durable while sending
+    }
+
+    /**
+     * Wait until the client was sent the ack of the given sequence, e.g. before closing a connection the client
+     * half-closed after its last number.
+     * @param sequence
+     * @param timeout
+     * @param unit
+     * @return true if the ack was sent, false on timeout or if the connection stopped acking
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitAcked(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!closed && sentSequence < sequence) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                break;
+            }
+            wait(remainingMillis);
+        }
+        return sentSequence >= sequence;
+    }
+
+    /**
+     * Numbers of this connection failed to persist: stop acking and close the connection so the client cannot
+     * mistake its last ack for covering them.
+     */
+    public void fail() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        log.error("Closing acked connection Remote Add {} since its numbers failed to persist",
+                socket.getRemoteSocketAddress());
+        close();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.error("Error closing socket Remote Add {}", socket.getRemoteSocketAddress(), e);
+        }
+    }
+
+    /**
+     * Stop acking; acks not yet sent are dropped.
+     */
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,50 @@
+package com.manoj.concurrent.server.log;
+
+/**
+ * A single job for the {@link LogWriter}. Carries the number to append and, in acked mode, the connection's
+ * acknowledger along with the per connection sequence of the number so the writer can ack it once durable.
+ * An entry without a number is an ack marker for a duplicate; it is not written but still acked once the batch
+ * it travels with has been forced.
+ */
+public final class LogEntry {
+    private final String number;
+    private final DurableAcknowledger acknowledger;
+    private final long sequence;
+
+    public LogEntry(String number, DurableAcknowledger acknowledger, long sequence) {
+        this.number = number;
+        this.acknowledger = acknowledger;
+        this.sequence = sequence;
+    }
+
+    /**
+     * An entry for a number which does not need to be acked.
+     * @param number
+     * @return
+     */
+    public static LogEntry of(String number) {
+        return new LogEntry(number, null, 0);
+    }
+
+    /**
+     * An ack only entry for a duplicate number received in acked mode.
+     * @param acknowledger
+     * @param sequence
+     * @return
+     */
+    public static LogEntry ackMarker(DurableAcknowledger acknowledger, long sequence) {
+        return new LogEntry(null, acknowledger, sequence);
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public DurableAcknowledger getAcknowledger() {
+        return acknowledger;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
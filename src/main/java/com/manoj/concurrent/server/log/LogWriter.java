@@ -1,80 +1,243 @@
 package com.manoj.concurrent.server.log;
 
-import com.manoj.concurrent.server.constants.Constants;
+import com.manoj.concurrent.server.config.CpuAffinity;
+import com.manoj.concurrent.server.sink.NumberSink;
+import com.manoj.concurrent.server.stats.PeriodicReportingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 
 /**
- *  A log writer which initializes a file named numbers.log in application's root path and provide
+ *  A log writer which initializes the log file, numbers.log in application's root path by default, and provide
  *  a queue based mechanism to write to a file. It is single threaded to avoid corruption.
+ *  Entries are drained from the queue in batches and appended through a single open channel. Depending on the
+ *  {@link DurabilityPolicy} the channel is forced after a batch, so one fsync is shared by every connection whose
+ *  numbers are in that batch (group commit). Acks for acked connections are only sent after such a force.
+ *  This is the {@link NumberSink} every server has.
  */
-public class LogWriter extends Thread {
+public class LogWriter extends Thread implements NumberSink {
     private static final Logger log = LoggerFactory.getLogger(LogWriter.class);
-    private BlockingQueue<String> fileWriterQueue;
+    private static final long POLL_TIMEOUT_MS = 50;
+    private final BlockingQueue<LogEntry> fileWriterQueue;
     private File logFile;
-//    private AtomicBoolean isRunning;
+    private final DurabilityPolicy durabilityPolicy;
+    private final long fsyncIntervalNanos;
+    private final int fsyncBatchSize;
+    private final PeriodicReportingService periodicReportingService;
+    private volatile boolean running = true;
+    private boolean durabilityFailed = false;// set once a write or force failed; only used by the writer thread
+    private String affinityGroup;// cpus the writer thread pins itself to; null to not pin
+
     /**
-     * Constructor creates the file if it does not exist or opens the file.
+     * Constructor creates the given file if it does not exist or opens and clears it.
      * @param fileWriterQueue
+     * @param logFile file the numbers are appended to
+     * @param durabilityPolicy when to force written numbers to disk
+     * @param fsyncIntervalMs max time between two forces for the PERIODIC policy
+     * @param fsyncBatchSize max entries per batch; also forces the PERIODIC policy early
+     * @param periodicReportingService where fsync latencies are reported; may be null
      */
-    public LogWriter(BlockingQueue fileWriterQueue) {
-        log.info("Opening file for logging {}", Constants.LOG_FILE_NAME);
-        logFile = new File(Constants.LOG_FILE_NAME);
+    public LogWriter(BlockingQueue<LogEntry> fileWriterQueue, File logFile, DurabilityPolicy durabilityPolicy, long fsyncIntervalMs,
+                     int fsyncBatchSize, PeriodicReportingService periodicReportingService) {
+        super("LogWriter");
+        log.info("Opening file for logging {}", logFile);
+        this.logFile = logFile;
         this.fileWriterQueue = fileWriterQueue;
+        this.durabilityPolicy = durabilityPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.fsyncBatchSize = fsyncBatchSize;
+        this.periodicReportingService = periodicReportingService;
         try {
             if (!logFile.exists()) {
-                log.info("File does not exist; Creating a new file named {}", Constants.LOG_FILE_NAME);
+                log.info("File does not exist; Creating a new file named {}", logFile);
                 logFile.createNewFile();
             } else {
-                log.info("File {} exists; Clearing it.",Constants.LOG_FILE_NAME);
-                new PrintWriter(Constants.LOG_FILE_NAME).close();
+                log.info("File {} exists; Clearing it.", logFile);
+                new PrintWriter(logFile).close();
             }
         } catch (IOException e) {
-            log.error("Error creating opening the file {}", Logger.ROOT_LOGGER_NAME, e);
+            log.error("Error creating opening the file {}", logFile, e);
         }
+        log.info("Log writer durability policy {}", durabilityPolicy);
+    }
+
+    /**
+     * Pin the writer thread to the given cpus once started.
+     * @param affinityGroup cpu list, e.g. 2 or 0-3; null to not pin
+     */
+    public void setAffinityGroup(String affinityGroup) {
+        this.affinityGroup = affinityGroup;
     }
 
     @Override
     public void run() {
-//        isRunning = true;
-        BufferedWriter oWriter = null;
-        while (true) {
-            try {
-                if (fileWriterQueue.isEmpty()) {
-//                    log.debug("Queue is empty; Nothing to write to file.");
-                } else {
-                    log.debug("Queue is not empty; Writing to file.");
-                    String number = fileWriterQueue.take();
-                    oWriter = new BufferedWriter(new FileWriter(Constants.LOG_FILE_NAME, true));
-                    oWriter.write(number + "\n");
-                }
-            } catch (Exception e) {
-                log.error("Exception writing to log file", e);
-                if (e instanceof InterruptedException) {
-                    Thread.currentThread().interrupt();
-                }
-            } finally {// close the file
-                try {
-                    if (oWriter != null) {
-                        oWriter.close();
+        if (affinityGroup != null) {
+            CpuAffinity.pinCurrentThread(affinityGroup);
+        }
+        List<LogEntry> batch = new ArrayList<>(fsyncBatchSize);
+        Map<DurableAcknowledger, Long> pendingAcks = new HashMap<>();// highest unforced sequence per connection
+        int unsyncedEntries = 0;
+        long lastForceNanos = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            // keep draining after shutdown is requested until everything queued so far is written
+            while (running || !fileWriterQueue.isEmpty()) {
+                LogEntry first = fileWriterQueue.poll(pollTimeoutNanos(unsyncedEntries, lastForceNanos),
+                        TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fileWriterQueue.drainTo(batch, fsyncBatchSize - 1);
+                    try {
+                        writeBatch(channel, batch);
+                        unsyncedEntries += batch.size();
+                        collectAcks(batch, pendingAcks);
+                    } catch (IOException e) {
+                        log.error("Exception writing to log file", e);
+                        failDurability(batch, pendingAcks);
                     }
-                } catch (IOException e) {
-                    log.error("Error closing the file {}", Logger.ROOT_LOGGER_NAME, e);
+                    batch.clear();
+                }
+                if (unsyncedEntries > 0 && shouldForce(unsyncedEntries, lastForceNanos)) {
+                    forceAndAcknowledge(channel, pendingAcks);
+                    unsyncedEntries = 0;
+                    lastForceNanos = System.nanoTime();
                 }
             }
+            if (unsyncedEntries > 0 && durabilityPolicy != DurabilityPolicy.NONE) {
+                forceAndAcknowledge(channel, pendingAcks);
+            }
+        } catch (InterruptedException e) {
+            log.error("Log writer interrupted", e);
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Error opening or closing the file {}", logFile, e);
+        }
+        log.info("Log writer stopped.");
+    }
+
+    /**
+     * Wait for new entries at most until the next PERIODIC force is due, so the group commit interval holds.
+     */
+    private long pollTimeoutNanos(int unsyncedEntries, long lastForceNanos) {
+        long pollTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT_MS);
+        if (unsyncedEntries > 0 && durabilityPolicy == DurabilityPolicy.PERIODIC) {
+            long untilForceNanos = fsyncIntervalNanos - (System.nanoTime() - lastForceNanos);
+            return Math.max(0, Math.min(pollTimeoutNanos, untilForceNanos));
+        }
+        return pollTimeoutNanos;
+    }
+
+    private void writeBatch(FileChannel channel, List<LogEntry> batch) throws IOException {
+        StringBuilder builder = new StringBuilder(batch.size() * 10);
+        for (LogEntry entry : batch) {
+            if (entry.getNumber() != null) {// ack markers for duplicates are not written
+                builder.append(entry.getNumber()).append('\n');
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void collectAcks(List<LogEntry> batch, Map<DurableAcknowledger, Long> pendingAcks) {
+        for (LogEntry entry : batch) {
+            if (entry.getAcknowledger() == null) {
+                continue;
+            }
+            if (durabilityFailed) {
+                entry.getAcknowledger().fail();
+            } else {
+                pendingAcks.merge(entry.getAcknowledger(), entry.getSequence(), Math::max);
+            }
         }
     }
 
+    /**
+     * A write or force failed, so the log may be missing numbers which dedupe already marked as seen. Acking any
+     * later sequence, or a duplicate of a lost number, would claim the lost numbers are durable; instead every acked
+     * connection affected now or seen from now on is failed and closed without a further ack.
+     */
+    private void failDurability(List<LogEntry> batch, Map<DurableAcknowledger, Long> pendingAcks) {
+        if (!durabilityFailed) {
+            log.error("Log file {} failed to persist numbers; no more acks will be sent", logFile);
+        }
+        durabilityFailed = true;
+        for (LogEntry entry : batch) {
+            if (entry.getAcknowledger() != null) {
+                entry.getAcknowledger().fail();
+            }
+        }
+        pendingAcks.keySet().forEach(DurableAcknowledger::fail);
+        pendingAcks.clear();
+    }
+
+    private boolean shouldForce(int unsyncedEntries, long lastForceNanos) {
+        switch (durabilityPolicy) {
+            case PER_BATCH:
+                return true;
+            case PERIODIC:
+                return unsyncedEntries >= fsyncBatchSize || System.nanoTime() - lastForceNanos >= fsyncIntervalNanos;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Force the channel to disk, report the latency and hand the cumulative acks covered by this force to the
+     * connections' ack senders.
+     */
+    private void forceAndAcknowledge(FileChannel channel, Map<DurableAcknowledger, Long> pendingAcks) {
+        long start = System.nanoTime();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Exception forcing log file to disk", e);
+            failDurability(Collections.emptyList(), pendingAcks);
+            return;
+        }
+        long latencyNanos = System.nanoTime() - start;
+        if (periodicReportingService != null) {
+            periodicReportingService.recordFsync(latencyNanos);
+        }
+        pendingAcks.forEach(DurableAcknowledger::acknowledge);
+        pendingAcks.clear();
+    }
+
+    @Override
+    public void publish(LogEntry entry) throws InterruptedException {
+        this.fileWriterQueue.put(entry);
+    }
+
+    /**
+     * Stop accepting work and wait for the writer to exit once the queue has been drained and, unless the policy
+     * is NONE, forced to disk.
+     */
+    @Override
+    public void shutdown() throws InterruptedException {
+        running = false;
+        this.join();
+    }
+
     /**
      * Adds a file appending job
      * @param message
      * @throws InterruptedException
      */
     public void writeToFile(String message) throws Exception {
-        this.fileWriterQueue.put(message);
+        this.fileWriterQueue.put(LogEntry.of(message));
     }
 }
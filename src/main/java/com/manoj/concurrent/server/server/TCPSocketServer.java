@@ -5,14 +5,26 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.config.Stage;
+import com.manoj.concurrent.server.config.StageConfig;
+import com.manoj.concurrent.server.handler.DedupeStage;
 import com.manoj.concurrent.server.handler.IncomingMessageHandler;
-import com.manoj.concurrent.server.constants.Constants;
+import com.manoj.concurrent.server.log.AckStage;
+import com.manoj.concurrent.server.log.DurabilityPolicy;
+import com.manoj.concurrent.server.log.DurableAcknowledger;
 import com.manoj.concurrent.server.log.LogWriter;
+import com.manoj.concurrent.server.sink.NumberSink;
+import com.manoj.concurrent.server.sink.SubscriberFeedSink;
 import com.manoj.concurrent.server.stats.PeriodicReportingService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,64 +33,139 @@ import org.slf4j.LoggerFactory;
  * A TCP connection server which satisfies the following requirements
  * immediately followed by a server-native newline sequence; or a termination sequence as detailed in #9,
  * below.
- * Listens in port 4000 for client connections. Once accepted a connection hands over the socket to a dedicated
- * Thread class (@link {@link IncomingMessageHandler}) for I/O for that socket
+ * Listens in the configured port for client connections. Once accepted a connection hands over the socket to a
+ * thread of the read stage (@link {@link IncomingMessageHandler}) for I/O for that socket
+ * The server is assembled from a {@link ServerConfig} which declares thread count, queue and affinity group of
+ * each {@link Stage}: accept (this thread), read, dedupe ({@link DedupeStage}), write ({@link LogWriter}), ack
+ * ({@link AckStage}) and report ({@link PeriodicReportingService}).
+ * In acked mode every connection gets a cumulative ack of the highest sequence forced to disk by the
+ * {@link LogWriter}, sent by the ack stage, which requires a {@link DurabilityPolicy} other than NONE.
+ * Numbers which pass dedupe are published to every registered {@link NumberSink}; the log writer is always one.
  * @author mramakrishnan
  */
 public class TCPSocketServer extends Thread {
     private static final Logger log = LoggerFactory.getLogger(TCPSocketServer.class);
-    private static int DEFAULT_SERVER_PORT=9000;
+    private static final long READ_STAGE_TERMINATION_TIMEOUT_MS = 5000;
+    private final ServerConfig config;
     private int port;
     private ServerSocket serverSocket;
     private AtomicBoolean running = new AtomicBoolean(false);
-    private AtomicInteger connectionCount = new AtomicInteger(0);// Maintain total connection count for server
+    private final Semaphore connectionPermits;// one per open connection; released by its handler when it is done
     private LogWriter logWriter;
+    private final List<NumberSink> sinks = new CopyOnWriteArrayList<>();
+    private SubscriberFeedSink feedSink;// null when the feed is disabled
     private List<Socket> socketList;// a list of connection
-    private final BlockingQueue fileWriterQueue = new LinkedBlockingQueue();
+    private final ThreadPoolExecutor readStage;
+    private final DedupeStage dedupeStage;
+    private final AckStage ackStage;// null unless acks are enabled
     private final PeriodicReportingService periodicReportingService;
     private int  maxConnWarnCount = 0;
-    private AtomicBoolean orderShutdown; // a boolean to maintain order shutdown by terminate command
+    private final CountDownLatch orderShutdown = new CountDownLatch(1); // counted down by a terminate command
+    private final CountDownLatch shutdownComplete = new CountDownLatch(1);
 
-    public TCPSocketServer(){
-         this.port=DEFAULT_SERVER_PORT;
+    /**
+     * Assemble the server stages from the configuration and start all of them but the accept stage,
+     * see {@link #startServer()}.
+     * @param config
+     */
+    public TCPSocketServer(ServerConfig config){
+         this.config = config;
+         this.port=config.getPort();
+         log.info(config.describeTopology());
          socketList = Collections.synchronizedList(new ArrayList<>());// Maintain a list of socket list. This uses synchronized list since
         // the terminate does not
-         this.logWriter = new LogWriter(fileWriterQueue);
+         this.connectionPermits = new Semaphore(config.getMaxConnections());
+         setName(config.getStage(Stage.ACCEPT).threadName(1));
+         StageConfig reportStage = config.getStage(Stage.REPORT);
+         this.periodicReportingService = new PeriodicReportingService(reportStage.getThreads(),
+                 reportStage.newThreadFactory(), config.getReportIntervalSeconds());
+         StageConfig writeStage = config.getStage(Stage.WRITE);
+         this.logWriter = new LogWriter(writeStage.newQueue(), config.getLogFile(), config.getDurabilityPolicy(),
+                 config.getFsyncIntervalMs(), config.getFsyncBatchSize(), periodicReportingService);
+         logWriter.setName(writeStage.threadName(1));
+         logWriter.setAffinityGroup(writeStage.getAffinityGroup());
+         this.ackStage = config.isAcknowledgeWrites() ? new AckStage(config.getStage(Stage.ACK)) : null;
+         if (ackStage != null) {
+             ackStage.start();
+         }
          log.info("Starting log writer..");
          logWriter.start();
-         this.periodicReportingService = new PeriodicReportingService();
+         sinks.add(logWriter);
+         this.dedupeStage = new DedupeStage(config.getStage(Stage.DEDUPE), periodicReportingService, sinks);
+         dedupeStage.start();
+         StageConfig readStageConfig = config.getStage(Stage.READ);
+         this.readStage = new ThreadPoolExecutor(readStageConfig.getThreads(), readStageConfig.getThreads(), 0,
+                 TimeUnit.MILLISECONDS, readStageConfig.newQueue(), readStageConfig.newThreadFactory(),
+                 new WaitForReaderPolicy());
          this.periodicReportingService.start();
-         this.orderShutdown = new AtomicBoolean(false);
-         Thread shutdownThread = new Thread(new ShutdownTask());
+         Thread shutdownThread = new Thread(new ShutdownTask(), "shutdown");
         log.info("Starting shutdown threads..");
          shutdownThread.start();
 
     }
 
     /**
-     * A shutdown task which will scan for shutdown order from a client and starts the process
+     * Makes the accept thread wait until a reader or a queue slot is free instead of rejecting a connection. A
+     * reader which just finished a connection is briefly not yet waiting for the next one, so rejecting would drop
+     * clients that came in just then. Only rejects once the read stage is shut down or the accept thread interrupted.
+     */
+    private static class WaitForReaderPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable handler, ThreadPoolExecutor readStage) {
+            if (readStage.isShutdown()) {
+                throw new RejectedExecutionException("Read stage is shut down");
+            }
+            try {
+                readStage.getQueue().put(handler);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for a free reader", e);
+            }
+        }
+    }
+
+    /**
+     * A shutdown task which will wait for shutdown order from a client and starts the process
      */
     public class ShutdownTask implements Runnable {
         public void run() {
-            while(true) {
-                if (orderShutdown.get()) {
-                    log.info("Detected shutdown command ");
-                    terminateAllClientConnections();
-                    terminateWorkerThreads();
-                    log.info("Exiting shutdown task");
-                    break;
-                }
+            try {
+                orderShutdown.await();
+            } catch (InterruptedException e) {
+                log.error("Shutdown task interrupted", e);
+                return;
             }
+            log.info("Detected shutdown command ");
+            terminateAllClientConnections();
+            terminateWorkerThreads();
+            log.info("Exiting shutdown task");
+            shutdownComplete.countDown();
         }
     }
 
     /**
-     * Starts a server listening for  client connections in the default port.
+     * Start an additional sink and publish every number which passes dedupe to it from now on.
+     * @param sink
+     * @throws IOException
+     */
+    public void addSink(NumberSink sink) throws IOException {
+        sink.start();
+        sinks.add(sink);
+    }
+
+    /**
+     * Starts a server listening for  client connections in the configured port, and the subscriber feed if enabled.
      */
     public void startServer() throws IOException {
+        if (config.isFeedEnabled()) {
+            feedSink = new SubscriberFeedSink(config.getFeedPort(), config.getFeedBindAddress(),
+                    config.getFeedBufferCapacity(), config.getFeedBatchSize(), config.getFeedSlowConsumerPolicy());
+            addSink(feedSink);
+        }
         log.info("Starting server in port {}", port);
         try {
             serverSocket = new ServerSocket(port);
+            port = serverSocket.getLocalPort();
             this.start();
             log.info("Started server. Server listening in port {}", port);
         } catch (IOException e) {
@@ -87,44 +174,108 @@ public class TCPSocketServer extends Thread {
         }
     }
 
+    /**
+     * @return the port the server is listening on; resolved once {@link #startServer()} returns
+     */
+    public int getLocalPort() {
+        return port;
+    }
+
+    public PeriodicReportingService getPeriodicReportingService() {
+        return periodicReportingService;
+    }
+
+    /**
+     * @return the subscriber feed once {@link #startServer()} returns, or null if the feed is disabled
+     */
+    public SubscriberFeedSink getFeedSink() {
+        return feedSink;
+    }
+
+    /**
+     * Wait for the shutdown started by a terminate command to finish; all client sockets are closed and the log
+     * writer has drained its queue.
+     * @param timeout
+     * @param unit
+     * @return true if the shutdown completed within the timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitShutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        return shutdownComplete.await(timeout, unit);
+    }
+
     @Override
     public void run() {
+        config.getStage(Stage.ACCEPT).pinCurrentThread();
         // Set running flag to true
         this.running.set(true);
         Socket socket = null;
         // if flag is set to listen, keep listening for client connection request and keep accepting connections
         while (this.running.get()) {
             try {
-                if (connectionCount.get() < Constants.MAX_CLIENT_CONNECTIONS) {
-                    socket = serverSocket.accept();
-                    socket.setSoTimeout(30000); // timeout set to 30,000 ms
-                    socket.setKeepAlive(true);
-                    log.info("Connection Accepted: Local Add {} Remote Add {}", socket.getLocalAddress(),
-                            socket.getRemoteSocketAddress());
-                    // add the connected socket to the list
-                    socketList.add(socket);
-                    // Pass the socket to the RequestHandler thread for processing
-                    IncomingMessageHandler messageHandler = new IncomingMessageHandler(socket, logWriter, fileWriterQueue,
-                            periodicReportingService, orderShutdown);
-                    messageHandler.start();
-                    connectionCount.getAndIncrement();// increment connection count
-                    log.debug("Current number of connections {}", connectionCount.get());
-                } else {
+                if (!connectionPermits.tryAcquire()) {
                     if(maxConnWarnCount < 4) {
-                        log.warn("Reached maximum connection limit {}; Stopping to accept more client connections"
-                                , connectionCount.get());
+                        log.warn("Reached maximum connection limit {}; Waiting for a connection to close before "
+                                + "accepting more client connections", config.getMaxConnections());
                         maxConnWarnCount++;
                     }
+                    connectionPermits.acquire();// block until a handler releases its connection
                 }
+            } catch (InterruptedException e) {
+                log.info("Accept stage interrupted; Stopping to accept client connections");
+                return;
+            }
+            try {
+                socket = serverSocket.accept();
             } catch (IOException e) {
+                connectionPermits.release();// nothing was accepted with this permit
                 log.error("Error in accepting connections", e);
                 if (e instanceof SocketException) {
                     log.error("SocketException for remote connection");
                 }
+                continue;
+            }
+            // from here on the permit belongs to this connection and is released exactly once: by its handler once
+            // the read stage ran it, or below if it never gets that far
+            socketList.add(socket);
+            DurableAcknowledger acknowledger = null;
+            try {
+                socket.setSoTimeout(30000); // timeout set to 30,000 ms
+                socket.setKeepAlive(true);
+                log.info("Connection Accepted: Local Add {} Remote Add {}", socket.getLocalAddress(),
+                        socket.getRemoteSocketAddress());
+                // Pass the socket to the read stage for processing
+                acknowledger = ackStage != null ? new DurableAcknowledger(socket, ackStage) : null;
+                Socket acceptedSocket = socket;
+                readStage.execute(new IncomingMessageHandler(socket, dedupeStage, orderShutdown, acknowledger,
+                        () -> releaseConnection(acceptedSocket)));
+                log.debug("Current number of connections {}",
+                        config.getMaxConnections() - connectionPermits.availablePermits());
+            } catch (IOException | RuntimeException e) {
+                log.error("Error handing connection Remote Add {} to the read stage; Closing it",
+                        socket.getRemoteSocketAddress(), e);
+                if (acknowledger != null) {
+                    acknowledger.close();
+                }
+                releaseConnection(socket);
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    log.error("Error closing socket Remote Add {}", socket.getRemoteSocketAddress(), ex);
+                }
             }
         }
     }
 
+    /**
+     * Forget a connection the read stage is done with and free its slot for the next client.
+     * @param socket
+     */
+    private void releaseConnection(Socket socket) {
+        socketList.remove(socket);
+        connectionPermits.release();
+    }
+
     /**
      * Terminate all connections and shutdown server
      */
@@ -140,8 +291,9 @@ public class TCPSocketServer extends Thread {
         });
         log.info("Attempting closing server listening socket");
         try {
-            this.serverSocket.close();
             this.running.set(false);
+            this.serverSocket.close();
+            this.interrupt();// the accept stage may be waiting for a free connection slot
         } catch (Exception e) {
             log.error("Error closing server socket port", port);
         }
@@ -153,9 +305,25 @@ public class TCPSocketServer extends Thread {
     private void terminateWorkerThreads() {
         log.info("Terminating worker threads..");
         try {
-            this.periodicReportingService.stopPeriodicTasks();
             this.running.set(false);
-            this.logWriter.join();
+            // client sockets are closed, so readers finish; then drain dedupe before the sinks
+            this.readStage.shutdown();
+            if (!this.readStage.awaitTermination(READ_STAGE_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Read stage did not terminate within {} ms; Interrupting readers",
+                        READ_STAGE_TERMINATION_TIMEOUT_MS);
+                this.readStage.shutdownNow();// e.g. a reader blocked handing a number to a full dedupe queue
+                if (!this.readStage.awaitTermination(READ_STAGE_TERMINATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    log.error("Read stage did not terminate after interrupting readers");
+                }
+            }
+            this.dedupeStage.shutdown();
+            this.periodicReportingService.stopPeriodicTasks();
+            for (NumberSink sink : sinks) {
+                sink.shutdown();
+            }
+            if (this.ackStage != null) {
+                this.ackStage.shutdown();// after the log writer queued its last acks
+            }
             this.join();
         } catch (Exception e) {
             log.error("Error shutting down ", port);
@@ -0,0 +1,34 @@
+package com.manoj.concurrent.server.sink;
+
+import com.manoj.concurrent.server.log.LogEntry;
+
+import java.io.IOException;
+
+/**
+ * A destination for numbers which passed the dedupe step. Every accepted number is published to all sinks
+ * registered with the server; the {@link com.manoj.concurrent.server.log.LogWriter} writing numbers.log is one of
+ * them. In acked mode duplicates are published as ack markers, entries without a number, which sinks only
+ * interested in numbers skip.
+ * publish is called from the ingest threads and must not block on anything slower than an in-memory queue.
+ */
+public interface NumberSink {
+
+    /**
+     * Start the sink's own threads; called once before anything is published.
+     * @throws IOException
+     */
+    void start() throws IOException;
+
+    /**
+     * Hand over one entry accepted after dedupe.
+     * @param entry
+     * @throws InterruptedException
+     */
+    void publish(LogEntry entry) throws InterruptedException;
+
+    /**
+     * Stop the sink and wait for its threads to finish.
+     * @throws InterruptedException
+     */
+    void shutdown() throws InterruptedException;
+}
@@ -0,0 +1,11 @@
+package com.manoj.concurrent.server.sink;
+
+/**
+ * What the {@link SubscriberFeedSink} does with a subscriber whose buffer is full.
+ * DROP       - drop the new number; the number of dropped numbers is sent in the next frame.
+ * DISCONNECT - close the subscriber's connection.
+ */
+public enum SlowConsumerPolicy {
+    DROP,
+    DISCONNECT
+}
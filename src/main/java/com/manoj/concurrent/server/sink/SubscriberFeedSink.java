@@ -0,0 +1,220 @@
+package com.manoj.concurrent.server.sink;
+
+import com.manoj.concurrent.server.log.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sink which pushes every newly seen unique number to subscribers connected on a side port, bound to the loopback
+ * address unless configured otherwise.
+ * Each subscriber gets its own bounded buffer and sender thread, so publishing only offers to in-memory queues and
+ * never blocks the ingest path. When a subscriber's buffer is full the {@link SlowConsumerPolicy} decides whether
+ * the number is dropped for that subscriber or the subscriber is disconnected.
+ * Protocol, server to subscriber only, all values big endian 4 byte ints:
+ * [count][dropped][number 1]...[number count]
+ * where dropped is the number of numbers dropped for this subscriber since the previous frame.
+ */
+public class SubscriberFeedSink implements NumberSink {
+    private static final Logger log = LoggerFactory.getLogger(SubscriberFeedSink.class);
+    private static final int ACCEPT_BACKLOG = 50;
+    private final int port;
+    private final InetAddress bindAddress;
+    private final int bufferCapacity;
+    private final int batchSize;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong droppedTotal = new AtomicLong(0);// numbers dropped across all subscribers
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    /**
+     * @param port side port subscribers connect to; 0 picks an ephemeral port, see {@link #getLocalPort()}
+     * @param bindAddress address the side port listens on, e.g. {@link InetAddress#getLoopbackAddress()}
+     * @param bufferCapacity max numbers buffered per subscriber
+     * @param batchSize max numbers per pushed frame
+     * @param slowConsumerPolicy what to do when a subscriber's buffer is full
+     * @throws IllegalArgumentException if bufferCapacity or batchSize is not positive
+     */
+    public SubscriberFeedSink(int port, InetAddress bindAddress, int bufferCapacity, int batchSize,
+                              SlowConsumerPolicy slowConsumerPolicy) {
+        if (bufferCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Feed buffer capacity and batch size must be positive but were "
+                    + bufferCapacity + " and " + batchSize);
+        }
+        this.port = port;
+        this.bindAddress = bindAddress;
+        this.bufferCapacity = bufferCapacity;
+        this.batchSize = batchSize;
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG, bindAddress);
+        acceptThread = new Thread(this::acceptSubscribers, "SubscriberFeedAcceptor");
+        acceptThread.start();
+        log.info("Subscriber feed listening in {}:{} with buffer {} per subscriber and slow consumer policy {}",
+                bindAddress.getHostAddress(), serverSocket.getLocalPort(), bufferCapacity, slowConsumerPolicy);
+    }
+
+    private void acceptSubscribers() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                log.debug("Subscriber feed server socket closed", e);
+                continue;
+            } catch (IOException e) {
+                log.error("Error in accepting subscriber connections", e);
+                continue;
+            }
+            Subscriber subscriber = null;
+            try {
+                subscriber = new Subscriber(socket);
+                subscribers.add(subscriber);
+                subscriber.start();
+                log.info("Subscriber connected: Remote Add {}", socket.getRemoteSocketAddress());
+            } catch (RuntimeException e) {
+                // keep accepting other subscribers whatever went wrong with this one
+                log.error("Error starting subscriber Remote Add {}; Closing it", socket.getRemoteSocketAddress(), e);
+                if (subscriber != null) {
+                    subscribers.remove(subscriber);
+                }
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    log.error("Error closing subscriber socket Remote Add {}", socket.getRemoteSocketAddress(), ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void publish(LogEntry entry) {
+        if (entry.getNumber() == null || subscribers.isEmpty()) {
+            return;
+        }
+        int number = Integer.parseInt(entry.getNumber());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(number);
+        }
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        log.info("Shutting down subscriber feed");
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.error("Error closing subscriber feed server socket", e);
+        }
+        if (acceptThread != null) {
+            acceptThread.join();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+            subscriber.join();
+        }
+    }
+
+    /**
+     * @return the side port subscribers connect to; resolved once {@link #start()} returns
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getDroppedTotal() {
+        return droppedTotal.get();
+    }
+
+    /**
+     * One connected subscriber with its bounded buffer; the thread drains the buffer in batches onto the socket.
+     */
+    private class Subscriber extends Thread {
+        private final Socket socket;
+        private final BlockingQueue<Integer> buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        private final AtomicInteger dropped = new AtomicInteger(0);// dropped since the last frame
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        Subscriber(Socket socket) {
+            super("SubscriberFeed-" + socket.getRemoteSocketAddress());
+            this.socket = socket;
+        }
+
+        void offer(int number) {
+            if (buffer.offer(number)) {
+                return;
+            }
+            if (slowConsumerPolicy == SlowConsumerPolicy.DROP) {
+                dropped.getAndIncrement();
+                droppedTotal.getAndIncrement();
+            } else if (!closed.get()) {
+                log.warn("Disconnecting slow subscriber Remote Add {}", socket.getRemoteSocketAddress());
+                close();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Integer> batch = new ArrayList<>(batchSize);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (!closed.get()) {
+                    batch.add(buffer.take());
+                    buffer.drainTo(batch, batchSize - 1);
+                    out.writeInt(batch.size());
+                    out.writeInt(dropped.getAndSet(0));
+                    for (Integer number : batch) {
+                        out.writeInt(number);
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                log.debug("Subscriber sender interrupted", e);
+            } catch (IOException e) {
+                if (!closed.get()) {
+                    log.info("Subscriber disconnected: Remote Add {}", socket.getRemoteSocketAddress());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscribers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("Error closing subscriber socket Remote Add {}", socket.getRemoteSocketAddress(), e);
+            }
+            this.interrupt();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A reporting service which maintains the statistics around the application's received numbers and aggregated
@@ -19,25 +20,48 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class PeriodicReportingService {
     private static final Logger log = LoggerFactory.getLogger(PeriodicReportingService.class);
-    private static final int DEFAULT_METRICS_HARVEST_TIME_INTERVAL = (int) TimeUnit.SECONDS.toSeconds(10);
+    private static final long DEFAULT_METRICS_HARVEST_TIME_INTERVAL = TimeUnit.SECONDS.toSeconds(10);
     private static final long INITIAL_DELAY = TimeUnit.SECONDS.toSeconds(5);
+    private final int threads;
+    private final ThreadFactory threadFactory;
+    private final long harvestIntervalSeconds;
     private ScheduledExecutorService executorService;
     private Future<?> taskFuture;
     private AtomicInteger uniqueIntegers = new AtomicInteger(0);// total number of unique integers
     private AtomicInteger totalIntegers = new AtomicInteger(0);// total integers
     private AtomicInteger newDuplicates = new AtomicInteger(0);// new duplicate numbers since last run
+    private AtomicInteger totalDuplicates = new AtomicInteger(0);// total duplicate numbers since app start
     private ConcurrentHashMap<String, String> seenIntegers= new ConcurrentHashMap<>();
+    private AtomicInteger fsyncCount = new AtomicInteger(0);// fsyncs since last run
+    private AtomicLong fsyncTotalNanos = new AtomicLong(0);// total fsync latency since last run
+    private AtomicLong fsyncMaxNanos = new AtomicLong(0);// worst fsync latency since last run
+    private AtomicLong fsyncTotal = new AtomicLong(0);// total fsyncs since app start
+
+    public PeriodicReportingService() {
+        this(1, Executors.defaultThreadFactory(), DEFAULT_METRICS_HARVEST_TIME_INTERVAL);
+    }
+
+    /**
+     * @param threads threads of the report stage
+     * @param threadFactory creates the report stage threads
+     * @param harvestIntervalSeconds seconds between two reports
+     */
+    public PeriodicReportingService(int threads, ThreadFactory threadFactory, long harvestIntervalSeconds) {
+        this.threads = threads;
+        this.threadFactory = threadFactory;
+        this.harvestIntervalSeconds = harvestIntervalSeconds;
+    }
 
     /**
      * A start method to kick off the scheduled task for collecting statistics and printing
      */
     public void start() {
         log.info("Starting Periodic metrics collector's task");
-        executorService = Executors.newScheduledThreadPool(1);
+        executorService = Executors.newScheduledThreadPool(threads, threadFactory);
         taskFuture = executorService
-                .scheduleAtFixedRate(periodicStatsTask, INITIAL_DELAY, DEFAULT_METRICS_HARVEST_TIME_INTERVAL, TimeUnit.SECONDS);
+                .scheduleAtFixedRate(periodicStatsTask, INITIAL_DELAY, harvestIntervalSeconds, TimeUnit.SECONDS);
         log.info("Periodic metrics collector service started and will collect the metrics periodically " +
-                "for every {} seconds", DEFAULT_METRICS_HARVEST_TIME_INTERVAL);
+                "for every {} seconds", harvestIntervalSeconds);
     }
 
     /**
@@ -74,6 +98,17 @@ public class PeriodicReportingService {
             //now reset values
             uniqueIntegers.set(0);
             newDuplicates.set(0);
+            logFsyncStatistics();
+        }
+
+        private void logFsyncStatistics() {
+            int count = fsyncCount.getAndSet(0);
+            long totalNanos = fsyncTotalNanos.getAndSet(0);
+            long maxNanos = fsyncMaxNanos.getAndSet(0);
+            if (count > 0) {
+                log.info("Fsync: {} calls, avg latency {} us, max latency {} us", count,
+                        TimeUnit.NANOSECONDS.toMicros(totalNanos / count), TimeUnit.NANOSECONDS.toMicros(maxNanos));
+            }
         }
     };
 
@@ -86,15 +121,48 @@ public class PeriodicReportingService {
      */
     public boolean updateIntegersAndCheckDupe(String input) {
         log.debug("Updating statistics...");
-        if (seenIntegers.containsKey(input)) {// found a duplicate
+        // check and add in one atomic step so two connections sending the same number cannot both see it as new
+        if (seenIntegers.putIfAbsent(input, "") != null) {// found a duplicate
             this.newDuplicates.getAndIncrement();
+            this.totalDuplicates.getAndIncrement();
             return true;
         } else {
-            this.seenIntegers.put(input, "");// add to the map
             this.uniqueIntegers.getAndIncrement();// not a duplicate so update unique integers
             this.totalIntegers.getAndIncrement(); // Update total unique count of integers since app start
         }
         log.debug("Finished updating statistics.");
         return false;
     }
-}
+
+    /**
+     * Record the latency of one fsync of the numbers log; reported with the periodic statistics.
+     * @param latencyNanos
+     */
+    public void recordFsync(long latencyNanos) {
+        this.fsyncCount.getAndIncrement();
+        this.fsyncTotal.getAndIncrement();
+        this.fsyncTotalNanos.addAndGet(latencyNanos);
+        this.fsyncMaxNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * @return total number of unique numbers received for this run of the application
+     */
+    public int getUniqueTotal() {
+        return totalIntegers.get();
+    }
+
+    /**
+     * @return total number of duplicate numbers received for this run of the application
+     */
+    public int getDuplicateTotal() {
+        return totalDuplicates.get();
+    }
+
+    /**
+     * @return total number of fsyncs of the numbers log for this run of the application
+     */
+    public long getFsyncTotal() {
+        return fsyncTotal.get();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.log.DurabilityPolicy;
+import com.manoj.concurrent.server.server.TCPSocketServer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End to end tests of acked mode: clients get cumulative "ack &lt;sequence&gt;" lines once their numbers are durable.
+ */
+public class AckedIngestTest {
+    private static final long FSYNC_INTERVAL_MS = 10;
+    private static final long ACK_LATENCY_CEILING_MS = 40;// well below the 50 ms writer poll timeout
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    private File logFile;
+    private TCPSocketServer server;
+    private final List<Socket> clients = new ArrayList<>();
+    private final Map<Socket, BufferedReader> readers = new HashMap<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (Socket client : clients) {
+            client.close();
+        }
+        if (server != null) {
+            try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+                socket.getOutputStream().write("terminate\n".getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                assertTrue(server.awaitShutdown(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testPeriodicAcksInOrder() throws Exception {
+        startServer(DurabilityPolicy.PERIODIC);
+        assertAcksInOrder(200);
+    }
+
+    @Test(timeout = 30000)
+    public void testPerBatchAcksInOrder() throws Exception {
+        startServer(DurabilityPolicy.PER_BATCH);
+        assertAcksInOrder(200);
+    }
+
+    @Test(timeout = 30000)
+    public void testPeriodicAckFollowsFsyncInterval() throws Exception {
+        startServer(DurabilityPolicy.PERIODIC);
+        Socket client = connect();
+        BufferedReader acks = acks(client);
+        long fastestMillis = Long.MAX_VALUE;
+        for (int sequence = 1; sequence <= 5; sequence++) {
+            long start = System.nanoTime();
+            send(client, String.format("%09d", sequence));
+            assertEquals("ack " + sequence, acks.readLine());
+            fastestMillis = Math.min(fastestMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        assertTrue("Fastest ack took " + fastestMillis + " ms", fastestMillis <= ACK_LATENCY_CEILING_MS);
+    }
+
+    @Test(timeout = 30000)
+    public void testDuplicatesMoveAckForward() throws Exception {
+        startServer(DurabilityPolicy.PERIODIC);
+        Socket first = connect();
+        Socket second = connect();
+        send(first, "000000001");
+        assertEquals("ack 1", acks(first).readLine());
+        send(first, "000000001");// duplicate on the same connection
+        assertEquals("ack 2", acks(first).readLine());
+        send(second, "000000001");// duplicate of a number sent on another connection
+        assertEquals("ack 1", acks(second).readLine());
+        send(second, "000000002");
+        assertEquals("ack 2", acks(second).readLine());
+    }
+
+    @Test(timeout = 30000)
+    public void testHalfClosedClientGetsLastAck() throws Exception {
+        startServer(DurabilityPolicy.PERIODIC);
+        Socket client = connect();
+        StringBuilder numbers = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            numbers.append(String.format("%09d", i)).append('\n');
+        }
+        client.getOutputStream().write(numbers.toString().getBytes(StandardCharsets.US_ASCII));
+        client.shutdownOutput();// no more numbers, but keep reading acks
+
+        BufferedReader acks = acks(client);
+        String lastAck = null;
+        for (String ack = acks.readLine(); ack != null; ack = acks.readLine()) {
+            lastAck = ack;
+        }
+        assertEquals("ack 1000", lastAck);
+    }
+
+    @Test
+    public void testTopologyListsAckStage() {
+        assertTrue(ServerConfig.fromProperties(properties(DurabilityPolicy.PERIODIC)).describeTopology()
+                .contains("ack     threads=1   queue=LINKED(0)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoneRejectsAckedMode() {
+        ServerConfig.fromProperties(properties(DurabilityPolicy.NONE));
+    }
+
+    private void assertAcksInOrder(int count) throws IOException {
+        Socket client = connect();
+        StringBuilder numbers = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            numbers.append(String.format("%09d", i)).append('\n');
+        }
+        client.getOutputStream().write(numbers.toString().getBytes(StandardCharsets.US_ASCII));
+        client.getOutputStream().flush();
+
+        BufferedReader acks = acks(client);
+        long lastAcked = 0;
+        while (lastAcked < count) {
+            String ack = acks.readLine();
+            assertTrue("Unexpected ack line " + ack, ack != null && ack.startsWith("ack "));
+            long sequence = Long.parseLong(ack.substring("ack ".length()));
+            assertTrue("Ack " + sequence + " after " + lastAcked, sequence > lastAcked && sequence <= count);
+            lastAcked = sequence;
+        }
+        assertEquals(count, Files.readAllLines(logFile.toPath(), StandardCharsets.US_ASCII).size());
+    }
+
+    private void startServer(DurabilityPolicy durabilityPolicy) throws IOException {
+        server = new TCPSocketServer(ServerConfig.fromProperties(properties(durabilityPolicy)));
+        server.startServer();
+    }
+
+    private Properties properties(DurabilityPolicy durabilityPolicy) {
+        logFile = new File(tempFolder.getRoot(), "numbers.log");
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("server.port", "0");
+        properties.setProperty("log.file", logFile.getPath());
+        properties.setProperty("log.durability", durabilityPolicy.name());
+        properties.setProperty("log.fsyncIntervalMs", String.valueOf(FSYNC_INTERVAL_MS));
+        properties.setProperty("ack.enabled", "true");
+        return properties;
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket("localhost", server.getLocalPort());
+        client.setSoTimeout(10000);
+        clients.add(client);
+        return client;
+    }
+
+    private BufferedReader acks(Socket client) throws IOException {
+        BufferedReader reader = readers.get(client);
+        if (reader == null) {
+            reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            readers.put(client, reader);
+        }
+        return reader;
+    }
+
+    private void send(Socket client, String number) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write((number + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
@@ -0,0 +1,74 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.log.DurabilityPolicy;
+import com.manoj.concurrent.server.log.LogEntry;
+import com.manoj.concurrent.server.log.LogWriter;
+import com.manoj.concurrent.server.stats.PeriodicReportingService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogWriterTest {
+    private static final long NEVER_MS = 60000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    private final PeriodicReportingService stats = new PeriodicReportingService();
+
+    @Test(timeout = 10000)
+    public void testShutdownDrainsAndForcesQueue() throws Exception {
+        File logFile = tempFolder.newFile("numbers.log");
+        // neither interval nor batch size is reached, so only the shutdown forces
+        LogWriter logWriter = new LogWriter(new LinkedBlockingQueue<>(), logFile, DurabilityPolicy.PERIODIC, NEVER_MS,
+                1000000, stats);
+        List<String> expected = publish(logWriter, 1000);
+        logWriter.start();
+        logWriter.shutdown();
+        assertEquals(expected, Files.readAllLines(logFile.toPath(), StandardCharsets.US_ASCII));
+        assertEquals(1, stats.getFsyncTotal());
+    }
+
+    @Test(timeout = 10000)
+    public void testPerBatchRecordsFsyncPerBatch() throws Exception {
+        File logFile = tempFolder.newFile("numbers.log");
+        LogWriter logWriter = new LogWriter(new LinkedBlockingQueue<>(), logFile, DurabilityPolicy.PER_BATCH, NEVER_MS,
+                10, stats);
+        List<String> expected = publish(logWriter, 100);
+        logWriter.start();
+        logWriter.shutdown();
+        assertEquals(expected, Files.readAllLines(logFile.toPath(), StandardCharsets.US_ASCII));
+        assertTrue("Expected one fsync per batch of at most 10", stats.getFsyncTotal() >= 10);
+    }
+
+    @Test(timeout = 10000)
+    public void testNoneNeverForces() throws Exception {
+        File logFile = tempFolder.newFile("numbers.log");
+        LogWriter logWriter = new LogWriter(new LinkedBlockingQueue<>(), logFile, DurabilityPolicy.NONE, NEVER_MS,
+                10, stats);
+        List<String> expected = publish(logWriter, 100);
+        logWriter.start();
+        logWriter.shutdown();
+        assertEquals(expected, Files.readAllLines(logFile.toPath(), StandardCharsets.US_ASCII));
+        assertEquals(0, stats.getFsyncTotal());
+    }
+
+    private List<String> publish(LogWriter logWriter, int count) throws InterruptedException {
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String number = String.format("%09d", i);
+            logWriter.publish(LogEntry.of(number));
+            numbers.add(number);
+        }
+        return numbers;
+    }
+}
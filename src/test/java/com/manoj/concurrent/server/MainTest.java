@@ -20,7 +20,7 @@ import java.util.concurrent.TimeUnit;
 public class MainTest {
     private static final Logger log = LoggerFactory.getLogger(MainTest.class);
     private final ExecutorService pool = Executors.newFixedThreadPool(3);
-    private static int SERVER_SOCKET = 9000;
+    private static int SERVER_SOCKET = 4000;
     @Test
     public void testMultiThreaded() throws InterruptedException, IOException {
 
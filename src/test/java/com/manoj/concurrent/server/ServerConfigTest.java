@@ -0,0 +1,174 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.config.CpuAffinity;
+import com.manoj.concurrent.server.config.QueueType;
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.config.Stage;
+import com.manoj.concurrent.server.config.StageConfig;
+import com.manoj.concurrent.server.log.DurabilityPolicy;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServerConfigTest {
+    private static final String THREAD_STATUS = "/proc/thread-self/status";
+    private static final String CPUS_ALLOWED = "Cpus_allowed_list:";
+
+    @Test
+    public void testDefaultsKeepOneReaderPerConnectionAndInlineDedupe() {
+        ServerConfig config = ServerConfig.fromProperties(ServerConfig.defaultProperties());
+        assertEquals(4000, config.getPort());
+        assertEquals(5, config.getMaxConnections());
+        assertEquals(DurabilityPolicy.NONE, config.getDurabilityPolicy());
+        assertFalse(config.isFeedEnabled());
+        assertTrue(config.getFeedBindAddress().isLoopbackAddress());
+        assertEquals(5, config.getStage(Stage.READ).getThreads());
+        assertTrue(config.getStage(Stage.READ).newQueue() instanceof SynchronousQueue);
+        assertEquals(0, config.getStage(Stage.DEDUPE).getThreads());
+        assertEquals(1, config.getStage(Stage.WRITE).getThreads());
+        assertNull(config.getStage(Stage.ACCEPT).getQueueType());
+        assertTrue(config.describeTopology().contains("dedupe  threads=0   queue=-"));
+        assertTrue(config.describeTopology().contains("ack     threads=0   queue=-"));
+    }
+
+    @Test
+    public void testStageQueueAndAffinity() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.dedupe.threads", "2");
+        properties.setProperty("stage.dedupe.queueCapacity", "64");
+        properties.setProperty("stage.write.affinity", "2-3");
+        ServerConfig config = ServerConfig.fromProperties(properties);
+        StageConfig dedupe = config.getStage(Stage.DEDUPE);
+        assertEquals(QueueType.ARRAY, dedupe.getQueueType());
+        assertEquals(64, ((ArrayBlockingQueue<?>) dedupe.newQueue()).remainingCapacity());
+        assertEquals("write@cpu2-3-1", config.getStage(Stage.WRITE).threadName(1));
+        assertEquals("dedupe-1", dedupe.newThreadFactory().newThread(() -> { }).getName());
+    }
+
+    @Test
+    public void testStageThreadsPinThemselvesToAffinityGroup() throws Exception {
+        Assume.assumeTrue(new File(THREAD_STATUS).exists());
+        // pin to a cpu this process may run on, e.g. not cpu 0 in a restricted container cpuset
+        String cpu = allowedCpus().split("[-,]")[0];
+        AtomicBoolean pinned = new AtomicBoolean(false);
+        Thread probe = new Thread(() -> pinned.set(CpuAffinity.pinCurrentThread(cpu)));
+        probe.start();
+        probe.join();
+        Assume.assumeTrue("taskset cannot pin threads here", pinned.get());
+
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.report.affinity", cpu);
+        StageConfig report = ServerConfig.fromProperties(properties).getStage(Stage.REPORT);
+        AtomicReference<String> allowedCpus = new AtomicReference<>();
+        Thread thread = report.newThreadFactory().newThread(() -> {
+            try {
+                allowedCpus.set(allowedCpus());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(cpu, allowedCpus.get());
+    }
+
+    /**
+     * @return the cpus the calling thread may run on, e.g. 0-3
+     */
+    private static String allowedCpus() throws IOException {
+        for (String line : Files.readAllLines(Paths.get(THREAD_STATUS), StandardCharsets.US_ASCII)) {
+            if (line.startsWith(CPUS_ALLOWED)) {
+                return line.substring(CPUS_ALLOWED.length()).trim();
+            }
+        }
+        throw new IllegalStateException(CPUS_ALLOWED + " missing in " + THREAD_STATUS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMoreThanOneWriter() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.write.threads", "2");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAckWithoutDurability() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("ack.enabled", "true");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAckWithParallelDedupe() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("ack.enabled", "true");
+        properties.setProperty("log.durability", "PERIODIC");
+        properties.setProperty("stage.dedupe.threads", "2");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAckQueueSmallerThanConnections() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.ack.queue", "ARRAY");
+        properties.setProperty("stage.ack.queueCapacity", "4");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyFeedBuffer() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("feed.bufferCapacity", "0");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeFeedBatchSize() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("feed.batchSize", "-1");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyFsyncBatch() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("log.fsyncBatchSize", "0");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMoreConnectionsThanSynchronousReaders() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("server.maxConnections", "6");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnboundedArrayQueue() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.write.queue", "ARRAY");
+        ServerConfig.fromProperties(properties);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMalformedAffinity() {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("stage.read.affinity", "cores");
+        ServerConfig.fromProperties(properties);
+    }
+}
@@ -0,0 +1,134 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.log.LogEntry;
+import com.manoj.concurrent.server.server.TCPSocketServer;
+import com.manoj.concurrent.server.sink.SlowConsumerPolicy;
+import com.manoj.concurrent.server.sink.SubscriberFeedSink;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriberFeedSinkTest {
+    private static final int SLOW_CONSUMER_NUMBERS = 2000000;// enough to fill the socket buffers as well
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    private SubscriberFeedSink sink;
+    private TCPSocketServer server;
+    private Socket subscriber;
+
+    @After
+    public void tearDown() throws Exception {
+        if (subscriber != null) {
+            subscriber.close();
+        }
+        if (server != null) {
+            try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+                socket.getOutputStream().write("terminate\n".getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                assertTrue(server.awaitShutdown(10, TimeUnit.SECONDS));
+            }
+        } else {
+            sink.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testPushesNewNumbersInBatches() throws Exception {
+        sink = startSinkWithSubscriber(100, 2, SlowConsumerPolicy.DISCONNECT);
+        sink.publish(LogEntry.of("000000007"));
+        sink.publish(LogEntry.ackMarker(null, 1));// duplicates are not pushed
+        sink.publish(LogEntry.of("123456789"));
+        sink.publish(LogEntry.of("999999999"));
+
+        assertEquals(Arrays.asList(7, 123456789, 999999999), receive(3, 2));
+    }
+
+    @Test(timeout = 30000)
+    public void testServerPushesIngestedNumbersToSubscriber() throws Exception {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("server.port", "0");
+        properties.setProperty("log.file", new File(tempFolder.getRoot(), "numbers.log").getPath());
+        properties.setProperty("feed.port", "0");
+        server = new TCPSocketServer(ServerConfig.fromProperties(properties));
+        server.startServer();
+        sink = server.getFeedSink();
+        subscribe(sink);
+
+        try (Socket client = new Socket("localhost", server.getLocalPort())) {
+            OutputStream out = client.getOutputStream();
+            out.write("000000042\n000000042\nnot-a-number\n314159265\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            assertEquals(Arrays.asList(42, 314159265), receive(2, 1024));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testDropPolicyKeepsSlowSubscriberWithoutBlocking() throws Exception {
+        sink = startSinkWithSubscriber(10, 10, SlowConsumerPolicy.DROP);
+        for (int i = 0; i < SLOW_CONSUMER_NUMBERS; i++) {
+            sink.publish(LogEntry.of("000000001"));
+        }
+        assertTrue(sink.getDroppedTotal() > 0);
+        assertEquals(1, sink.getSubscriberCount());
+    }
+
+    @Test(timeout = 30000)
+    public void testDisconnectPolicyClosesSlowSubscriber() throws Exception {
+        sink = startSinkWithSubscriber(10, 10, SlowConsumerPolicy.DISCONNECT);
+        for (int i = 0; i < SLOW_CONSUMER_NUMBERS && sink.getSubscriberCount() > 0; i++) {
+            sink.publish(LogEntry.of("000000001"));
+        }
+        assertEquals(0, sink.getSubscriberCount());
+        assertEquals(0, sink.getDroppedTotal());
+    }
+
+    private SubscriberFeedSink startSinkWithSubscriber(int bufferCapacity, int batchSize, SlowConsumerPolicy policy)
+            throws IOException, InterruptedException {
+        SubscriberFeedSink feedSink = new SubscriberFeedSink(0, InetAddress.getLoopbackAddress(), bufferCapacity,
+                batchSize, policy);
+        feedSink.start();
+        subscribe(feedSink);
+        return feedSink;
+    }
+
+    private void subscribe(SubscriberFeedSink feedSink) throws IOException, InterruptedException {
+        subscriber = new Socket(InetAddress.getLoopbackAddress(), feedSink.getLocalPort());
+        subscriber.setSoTimeout(10000);
+        while (feedSink.getSubscriberCount() == 0) {
+            Thread.sleep(5);
+        }
+    }
+
+    private List<Integer> receive(int numbers, int batchSize) throws IOException {
+        DataInputStream in = new DataInputStream(subscriber.getInputStream());
+        List<Integer> received = new ArrayList<>();
+        while (received.size() < numbers) {
+            int count = in.readInt();
+            assertTrue("Frame larger than batch size", count >= 1 && count <= batchSize);
+            assertEquals(0, in.readInt());
+            for (int i = 0; i < count; i++) {
+                received.add(in.readInt());
+            }
+        }
+        return received;
+    }
+}
@@ -0,0 +1,111 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.server.TCPSocketServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TCPSocketServerTest {
+    private static final int MAX_CONNECTIONS = 2;
+    private static final long IDLE_MILLIS = 500;
+    private static final int SHORT_LIVED_CLIENTS = 400;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    private TCPSocketServer server;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("server.port", "0");
+        properties.setProperty("server.maxConnections", String.valueOf(MAX_CONNECTIONS));
+        properties.setProperty("stage.read.threads", String.valueOf(MAX_CONNECTIONS));
+        properties.setProperty("log.file", new File(tempFolder.getRoot(), "numbers.log").getPath());
+        server = new TCPSocketServer(ServerConfig.fromProperties(properties));
+        server.startServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Socket client : clients) {
+            client.close();
+        }
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            send(socket, "terminate");
+            assertTrue(server.awaitShutdown(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testClosedConnectionsFreeTheirSlot() throws Exception {
+        int connections = MAX_CONNECTIONS * 3;
+        for (int i = 1; i <= connections; i++) {
+            try (Socket client = new Socket("localhost", server.getLocalPort())) {
+                send(client, String.format("%09d", i));
+            }
+            awaitUniqueTotal(i);
+        }
+        assertEquals(connections, server.getPeriodicReportingService().getUniqueTotal());
+    }
+
+    @Test(timeout = 60000)
+    public void testShortLivedClientsAreNeverDropped() throws Exception {
+        for (int i = 1; i <= SHORT_LIVED_CLIENTS; i++) {
+            try (Socket client = new Socket("localhost", server.getLocalPort())) {
+                send(client, String.format("%09d", i));
+            }
+        }
+        awaitUniqueTotal(SHORT_LIVED_CLIENTS);
+        assertEquals(SHORT_LIVED_CLIENTS, server.getPeriodicReportingService().getUniqueTotal());
+    }
+
+    @Test(timeout = 30000)
+    public void testAcceptWaitsWithoutSpinningAtTheLimit() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+        for (int i = 1; i <= MAX_CONNECTIONS; i++) {
+            Socket client = new Socket("localhost", server.getLocalPort());
+            clients.add(client);
+            send(client, String.format("%09d", i));
+        }
+        awaitUniqueTotal(MAX_CONNECTIONS);
+
+        long cpuBefore = threads.getThreadCpuTime(server.getId());
+        Thread.sleep(IDLE_MILLIS);
+        long cpuMillis = TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(server.getId()) - cpuBefore);
+        assertTrue("Accept thread used " + cpuMillis + " ms cpu while at the limit", cpuMillis < IDLE_MILLIS / 10);
+
+        clients.remove(0).close();// frees a slot for the terminate connection of tearDown
+    }
+
+    private void awaitUniqueTotal(long total) throws InterruptedException {
+        while (server.getPeriodicReportingService().getUniqueTotal() < total) {
+            Thread.sleep(5);
+        }
+    }
+
+    private void send(Socket socket, String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+    }
+}
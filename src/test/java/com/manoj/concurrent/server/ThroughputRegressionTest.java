@@ -0,0 +1,254 @@
+package com.manoj.concurrent.server;
+
+import com.manoj.concurrent.server.config.ServerConfig;
+import com.manoj.concurrent.server.server.TCPSocketServer;
+import com.manoj.concurrent.server.stats.PeriodicReportingService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * In-process throughput regression suite. Starts a {@link TCPSocketServer} on an ephemeral port writing to a temp
+ * log file, drives a fixed workload of N connections each sending M numbers with X% duplicates followed by a
+ * terminate, and verifies the log file and the statistics. Fails when throughput drops more than perf.tolerancePercent
+ * below the committed baseline (perf/throughput-baseline.json on the test classpath, or perf.baselineFile) or shutdown
+ * takes longer than a ceiling. Results are written as JSON to perf.resultsFile (build/perf/throughput-results.json) in
+ * the baseline's format, so a new baseline is a copy of a results file.
+ * Workload and limits can be overridden with the perf.* system properties; a workload other than the baseline's is
+ * only checked against perf.minThroughput.
+ */
+public class ThroughputRegressionTest {
+    private static final Logger log = LoggerFactory.getLogger(ThroughputRegressionTest.class);
+    private static final int CONNECTIONS = Integer.getInteger("perf.connections", 4);
+    private static final int NUMBERS_PER_CONNECTION = Integer.getInteger("perf.numbersPerConnection", 50000);
+    private static final int DUPLICATE_PERCENT = Integer.getInteger("perf.duplicatePercent", 10);
+    private static final long MIN_THROUGHPUT_PER_SEC = Long.getLong("perf.minThroughput", 0);
+    private static final int TOLERANCE_PERCENT = Integer.getInteger("perf.tolerancePercent", 50);
+    private static final String BASELINE_RESOURCE = "/perf/throughput-baseline.json";
+    private static final long MAX_SHUTDOWN_MILLIS = Long.getLong("perf.maxShutdownMillis", 5000);
+    private static final long WORKLOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(120);
+    private static final String RESULTS_FILE = System.getProperty("perf.resultsFile",
+            "build/perf/throughput-results.json");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+    private File logFile;
+    private TCPSocketServer server;
+    private ExecutorService clients;
+
+    @Before
+    public void startServer() throws IOException {
+        logFile = new File(tempFolder.newFolder("log"), "numbers.log");
+        Properties properties = ServerConfig.defaultProperties();
+        properties.setProperty("server.port", "0");
+        properties.setProperty("log.file", logFile.getPath());
+        // one connection per sender plus the one which sends terminate
+        properties.setProperty("server.maxConnections", String.valueOf(CONNECTIONS + 1));
+        properties.setProperty("stage.read.threads", String.valueOf(CONNECTIONS + 1));
+        server = new TCPSocketServer(ServerConfig.fromProperties(properties));
+        server.startServer();
+        clients = Executors.newFixedThreadPool(CONNECTIONS);
+    }
+
+    @After
+    public void stopClients() {
+        clients.shutdownNow();
+    }
+
+    @Test
+    public void testThroughputAndShutdownLatency() throws Exception {
+        List<List<String>> workload = buildWorkload();
+        Set<String> expectedUnique = new HashSet<>();
+        workload.forEach(expectedUnique::addAll);
+        int total = CONNECTIONS * NUMBERS_PER_CONNECTION;
+        int expectedDuplicates = total - expectedUnique.size();
+
+        long start = System.nanoTime();
+        List<Future<?>> senders = new ArrayList<>();
+        for (List<String> numbers : workload) {
+            senders.add(clients.submit(() -> {
+                send(numbers);
+                return null;
+            }));
+        }
+        for (Future<?> sender : senders) {
+            sender.get(WORKLOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        awaitProcessed(server.getPeriodicReportingService(), total);
+        long ingestNanos = System.nanoTime() - start;
+
+        long terminateStart = System.nanoTime();
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.getOutputStream().write("terminate\n".getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().flush();
+            assertTrue("Server did not shut down", server.awaitShutdown(WORKLOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        long shutdownMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - terminateStart);
+        long throughput = total * TimeUnit.SECONDS.toNanos(1) / Math.max(ingestNanos, 1);
+        long minThroughput = minThroughput();
+        writeResults(total, expectedUnique.size(), expectedDuplicates, ingestNanos, throughput, minThroughput,
+                shutdownMillis);
+
+        List<String> logged = Files.readAllLines(logFile.toPath(), StandardCharsets.US_ASCII);
+        assertEquals("Log file must not contain duplicates", logged.size(), new HashSet<>(logged).size());
+        assertEquals(expectedUnique, new HashSet<>(logged));
+        assertEquals(expectedUnique.size(), server.getPeriodicReportingService().getUniqueTotal());
+        assertEquals(expectedDuplicates, server.getPeriodicReportingService().getDuplicateTotal());
+        assertTrue("Throughput " + throughput + "/s below floor " + minThroughput + "/s",
+                throughput >= minThroughput);
+        assertTrue("Shutdown took " + shutdownMillis + " ms; ceiling " + MAX_SHUTDOWN_MILLIS + " ms",
+                shutdownMillis <= MAX_SHUTDOWN_MILLIS);
+    }
+
+    /**
+     * Deterministic workload: every connection sends its own range of unique numbers, and for DUPLICATE_PERCENT of
+     * its messages repeats a number from the range of a randomly picked connection, its own or another one, so
+     * duplicates arrive both on the same connection and across connections.
+     */
+    private List<List<String>> buildWorkload() {
+        Random random = new Random(42);
+        List<List<String>> workload = new ArrayList<>();
+        List<List<String>> uniqueNumbers = new ArrayList<>();
+        for (int connection = 0; connection < CONNECTIONS; connection++) {
+            List<String> numbers = new ArrayList<>(NUMBERS_PER_CONNECTION);
+            List<String> unique = new ArrayList<>();
+            int next = connection * NUMBERS_PER_CONNECTION;
+            for (int i = 0; i < NUMBERS_PER_CONNECTION; i++) {
+                if (i > 0 && random.nextInt(100) < DUPLICATE_PERCENT) {
+                    numbers.add(null);// filled in below once every connection's range is known
+                } else {
+                    String number = String.format("%09d", next++);
+                    numbers.add(number);
+                    unique.add(number);
+                }
+            }
+            workload.add(numbers);
+            uniqueNumbers.add(unique);
+        }
+        for (List<String> numbers : workload) {
+            for (int i = 0; i < numbers.size(); i++) {
+                if (numbers.get(i) == null) {
+                    List<String> unique = uniqueNumbers.get(random.nextInt(CONNECTIONS));
+                    numbers.set(i, unique.get(random.nextInt(unique.size())));
+                }
+            }
+        }
+        return workload;
+    }
+
+    private void send(List<String> numbers) throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)) {
+            for (String number : numbers) {
+                out.write((number + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+            out.flush();
+        }
+    }
+
+    private void awaitProcessed(PeriodicReportingService stats, int total) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WORKLOAD_TIMEOUT_MILLIS;
+        while (stats.getUniqueTotal() + stats.getDuplicateTotal() < total) {
+            assertTrue("Server processed " + (stats.getUniqueTotal() + stats.getDuplicateTotal()) + " of " + total
+                    + " numbers before timeout", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * @return the baseline throughput less the tolerance if the baseline was measured with this workload, and never
+     * below perf.minThroughput
+     */
+    private long minThroughput() throws IOException {
+        String baseline = readBaseline();
+        if (jsonValue(baseline, "connections") != CONNECTIONS
+                || jsonValue(baseline, "numbersPerConnection") != NUMBERS_PER_CONNECTION
+                || jsonValue(baseline, "duplicatePercent") != DUPLICATE_PERCENT) {
+            log.warn("Workload differs from the baseline; Only checking perf.minThroughput {}/s", MIN_THROUGHPUT_PER_SEC);
+            return MIN_THROUGHPUT_PER_SEC;
+        }
+        long floor = jsonValue(baseline, "throughputPerSec") * (100 - TOLERANCE_PERCENT) / 100;
+        return Math.max(floor, MIN_THROUGHPUT_PER_SEC);
+    }
+
+    private String readBaseline() throws IOException {
+        String baselineFile = System.getProperty("perf.baselineFile");
+        if (baselineFile != null) {
+            return new String(Files.readAllBytes(new File(baselineFile).toPath()), StandardCharsets.UTF_8);
+        }
+        try (InputStream in = getClass().getResourceAsStream(BASELINE_RESOURCE)) {
+            assertNotNull("Missing " + BASELINE_RESOURCE + " on the test classpath", in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long jsonValue(String json, String key) {
+        Matcher matcher = Pattern.compile("\"" + key + "\"\\s*:\\s*(\\d+)").matcher(json);
+        assertTrue("Missing " + key + " in the throughput baseline", matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private void writeResults(int total, int unique, int duplicates, long ingestNanos, long throughput,
+                              long minThroughput, long shutdownMillis) throws IOException {
+        String json = String.format(Locale.ROOT, "{%n"
+                        + "  \"connections\": %d,%n"
+                        + "  \"numbersPerConnection\": %d,%n"
+                        + "  \"duplicatePercent\": %d,%n"
+                        + "  \"totalNumbers\": %d,%n"
+                        + "  \"uniqueNumbers\": %d,%n"
+                        + "  \"duplicateNumbers\": %d,%n"
+                        + "  \"ingestMillis\": %d,%n"
+                        + "  \"throughputPerSec\": %d,%n"
+                        + "  \"minThroughputPerSec\": %d,%n"
+                        + "  \"tolerancePercent\": %d,%n"
+                        + "  \"shutdownMillis\": %d,%n"
+                        + "  \"maxShutdownMillis\": %d%n"
+                        + "}%n",
+                CONNECTIONS, NUMBERS_PER_CONNECTION, DUPLICATE_PERCENT, total, unique, duplicates,
+                TimeUnit.NANOSECONDS.toMillis(ingestNanos), throughput, minThroughput, TOLERANCE_PERCENT, shutdownMillis,
+                MAX_SHUTDOWN_MILLIS);
+        File results = new File(RESULTS_FILE);
+        if (results.getParentFile() != null) {
+            results.getParentFile().mkdirs();
+        }
+        Files.write(results.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        log.info("Throughput results written to {}:{}{}", results.getAbsolutePath(), System.lineSeparator(), json);
+    }
+}